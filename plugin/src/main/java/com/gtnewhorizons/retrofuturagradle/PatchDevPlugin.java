@@ -1,8 +1,11 @@
 package com.gtnewhorizons.retrofuturagradle;
 
+import javax.inject.Inject;
+
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.plugins.JavaLibraryPlugin;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 import org.gradle.util.GradleVersion;
 
 import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
@@ -12,7 +15,13 @@ import com.gtnewhorizons.retrofuturagradle.patchdev.PatchDevTasks;
 /**
  * A plugin for building patch-based mods for 1.7.10 Minecraft
  */
-public class PatchDevPlugin implements Plugin<Project> {
+public abstract class PatchDevPlugin implements Plugin<Project> {
+
+    /**
+     * @return An auto-injected gradle service handle.
+     */
+    @Inject
+    protected abstract BuildEventsListenerRegistry getEventsListenerRegistry();
 
     public void apply(Project project) {
         project.getPluginManager().apply(JavaLibraryPlugin.class);
@@ -21,7 +30,7 @@ public class PatchDevPlugin implements Plugin<Project> {
             throw new IllegalStateException("Using RetroFuturaGradle requires at least Gradle 7.6.");
         }
 
-        RfgCacheService.register(project.getGradle());
+        RfgCacheService.register(project, getEventsListenerRegistry());
 
         // Register the obfuscation status attribute
         ObfuscationAttribute.configureProject(project);
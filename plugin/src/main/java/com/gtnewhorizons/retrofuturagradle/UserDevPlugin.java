@@ -3,9 +3,12 @@
  */
 package com.gtnewhorizons.retrofuturagradle;
 
+import javax.inject.Inject;
+
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.plugins.JavaLibraryPlugin;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 import org.gradle.util.GradleVersion;
 
 import com.gtnewhorizons.retrofuturagradle.mcp.MCPTasks;
@@ -16,7 +19,13 @@ import com.gtnewhorizons.retrofuturagradle.modutils.ModUtils;
 /**
  * A plugin for modding 1.7.10 Minecraft
  */
-public class UserDevPlugin implements Plugin<Project> {
+public abstract class UserDevPlugin implements Plugin<Project> {
+
+    /**
+     * @return An auto-injected gradle service handle.
+     */
+    @Inject
+    protected abstract BuildEventsListenerRegistry getEventsListenerRegistry();
 
     public void apply(Project project) {
         project.getPluginManager().apply(JavaLibraryPlugin.class);
@@ -25,7 +34,7 @@ public class UserDevPlugin implements Plugin<Project> {
             throw new IllegalStateException("Using RetroFuturaGradle requires at least Gradle 9.2.");
         }
 
-        RfgCacheService.register(project.getGradle());
+        RfgCacheService.register(project, getEventsListenerRegistry());
 
         // Register the obfuscation status attribute
         ObfuscationAttribute.configureProject(project);
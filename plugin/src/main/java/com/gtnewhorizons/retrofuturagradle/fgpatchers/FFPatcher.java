@@ -1,9 +1,7 @@
 package com.gtnewhorizons.retrofuturagradle.fgpatchers;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -12,6 +10,7 @@ import org.apache.commons.lang3.RegExUtils;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.gtnewhorizons.retrofuturagradle.util.SourceText;
 
 public class FFPatcher {
 
@@ -47,8 +46,6 @@ public class FFPatcher {
     private static final String CONSTRUCTOR_CALL_REGEX = ("(?<name>this|super)\\((?<body>.*?)\\)(?<end>;)");
     private static final String VALUE_FIELD_REGEX = ("private static final %s\\[\\] [$\\w\\d]+ = new %s\\[\\]\\{.*?\\};");
 
-    private static final Pattern NEWLINE_PATTERN = Pattern.compile("\r?\n|\r");
-
     public static String processFile(String fileName, String text, boolean fixInterfaces) throws IOException {
         StringBuilder out = new StringBuilder();
         Matcher m = SYNTHETICS.matcher(text);
@@ -62,11 +59,10 @@ public class FFPatcher {
 
         text = RegExUtils.replaceAll(text, TRAILINGZERO, "$1$2");
 
-        List<String> lines = new ArrayList<>(128);
-        Collections.addAll(lines, NEWLINE_PATTERN.split(text));
+        List<String> lines = SourceText.splitLines(text);
 
         processClass(lines, "", 0, "", ""); // mutates the list
-        text = Joiner.on(System.lineSeparator()).join(lines);
+        text = SourceText.joinLines(lines);
 
         text = RegExUtils.replaceAll(text, NEWLINES, System.lineSeparator());
         text = RegExUtils.replaceAll(text, EMPTY_SUPER, "");
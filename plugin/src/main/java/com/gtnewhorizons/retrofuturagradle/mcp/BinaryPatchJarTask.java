@@ -15,21 +15,16 @@ import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.regex.Pattern;
 import java.util.zip.Adler32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
-
-import javax.inject.Inject;
 
 import org.apache.commons.collections4.iterators.EnumerationIterator;
 import org.apache.commons.collections4.iterators.IteratorIterable;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.java.util.jar.Pack200;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.file.ArchiveOperations;
 import org.gradle.api.file.ConfigurableFileTree;
-import org.gradle.api.file.FileTree;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.InputFile;
@@ -43,6 +38,8 @@ import com.gtnewhorizons.retrofuturagradle.fg12shadow.com.nothome.delta.GDiffPat
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 import lzma.sdk.lzma.Decoder;
 import lzma.streams.LzmaInputStream;
@@ -62,9 +59,6 @@ public abstract class BinaryPatchJarTask extends DefaultTask implements IJarTran
     @PathSensitive(PathSensitivity.RELATIVE)
     public abstract ConfigurableFileTree getExtraResourcesTree();
 
-    @Inject
-    protected abstract ArchiveOperations getArchiveOperations();
-
     @Override
     public MessageDigestConsumer hashInputs() {
         return HashUtils.addPropertyToHash(getPatchesLzma()).andThen(HashUtils.addPropertyToHash(getExtraClassesJar()))
@@ -84,26 +78,23 @@ public abstract class BinaryPatchJarTask extends DefaultTask implements IJarTran
         final Set<String> processed = new HashSet<>();
 
         final Adler32 hasher = new Adler32();
-        try (final ZipFile inZip = new ZipFile(inputJar);
+        try (final ZipFile inZip = ZipFile.builder().setFile(inputJar).get();
+                final ZipFile extraClassesZip = ZipFile.builder().setFile(extraClassesJar).get();
                 final FileOutputStream fos = FileUtils.openOutputStream(outputJar);
                 final BufferedOutputStream bos = new BufferedOutputStream(fos);
-                final ZipOutputStream out = new ZipOutputStream(bos)) {
-            // Apply patches
-            for (ZipEntry e : new IteratorIterable<>(new EnumerationIterator<>(inZip.entries()))) {
+                final ParallelJarWriter out = new ParallelJarWriter(bos, compressOutput())) {
+            // Apply patches, the unpatched entries are copied without recompressing them
+            for (ZipArchiveEntry e : new IteratorIterable<>(new EnumerationIterator<>(inZip.getEntries()))) {
                 if (e.getName().contains("META-INF")) {
                     continue;
                 }
                 if (e.isDirectory()) {
-                    out.putNextEntry(e);
+                    out.addDirectory(e.getName());
                 } else {
-                    final ZipEntry newEntry = new ZipEntry(e.getName());
-                    e.setTime(newEntry.getTime());
-                    out.putNextEntry(newEntry);
-
-                    final byte[] data = IOUtils.toByteArray(inZip.getInputStream(e));
                     ClassPatch patch = patches.get(e.getName().replace('\\', '/'));
 
                     if (patch != null) {
+                        byte[] data = Utilities.readZipEntry(inZip, e);
                         hasher.reset();
                         hasher.update(data, 0, data.length);
                         final int hash = (int) hasher.getValue();
@@ -115,35 +106,25 @@ public abstract class BinaryPatchJarTask extends DefaultTask implements IJarTran
                                             patch.inputChecksum,
                                             hash));
                         }
-                        patcher.patch(data, patch.patch);
+                        data = patcher.patch(data, patch.patch);
+                        out.addEntry(e.getName(), data);
+                    } else {
+                        out.addRawEntry(inZip, e);
                     }
-                    out.write(data);
-                    out.closeEntry();
                 }
                 processed.add(e.getName());
             }
             // Copy extra classes
-            {
-                final FileTree tree = getArchiveOperations().zipTree(getExtraClassesJar().getAsFile().get());
-                tree.visit(fvd -> {
-                    if (fvd.isDirectory()) {
-                        return;
-                    }
-                    final String name = fvd.getRelativePath().toString().replace('\\', '/');
-                    if (processed.contains(name)) {
-                        return;
-                    }
-                    ZipEntry newEntry = new ZipEntry(name);
-                    newEntry.setTime(fvd.getLastModified());
-                    try {
-                        out.putNextEntry(newEntry);
-                        out.write(IOUtils.toByteArray(fvd.open()));
-                        out.closeEntry();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                    processed.add(name);
-                });
+            for (ZipArchiveEntry e : new IteratorIterable<>(new EnumerationIterator<>(extraClassesZip.getEntries()))) {
+                if (e.isDirectory()) {
+                    continue;
+                }
+                final String name = e.getName().replace('\\', '/');
+                if (processed.contains(name)) {
+                    continue;
+                }
+                out.addRawEntry(extraClassesZip, e);
+                processed.add(name);
             }
             // Copy resources
             getExtraResourcesTree().visit(fvd -> {
@@ -153,19 +134,13 @@ public abstract class BinaryPatchJarTask extends DefaultTask implements IJarTran
                 try {
                     final String name = fvd.getRelativePath().toString().replace('\\', '/');
                     if (!processed.contains(name)) {
-                        final ZipEntry newEntry = new ZipEntry(name);
-                        newEntry.setTime(fvd.getLastModified());
-                        out.putNextEntry(newEntry);
-                        IOUtils.copy(fvd.open(), out);
+                        out.addEntry(name, fvd.getLastModified(), IOUtils.toByteArray(fvd.open()));
                         processed.add(name);
-                        out.closeEntry();
                     }
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             });
-            out.flush();
-            bos.flush();
         }
     }
 
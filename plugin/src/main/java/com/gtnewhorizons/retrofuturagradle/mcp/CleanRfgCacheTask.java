@@ -0,0 +1,72 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import javax.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+import org.gradle.api.tasks.options.Option;
+
+/**
+ * Evicts the least recently used decompiled jars and stored artifacts from the RFG cache, down to the configured size
+ * and age limits.
+ */
+@UntrackedTask(because = "Modifies the global RFG cache")
+public abstract class CleanRfgCacheTask extends DefaultTask {
+
+    @Internal
+    public abstract Property<RfgCacheService> getCacheService();
+
+    @Input
+    @Optional
+    public abstract Property<Long> getMaxSizeMb();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getMaxAgeDays();
+
+    @Input
+    @Option(option = "dry-run", description = "Only report what would be evicted, without deleting anything")
+    public abstract Property<Boolean> getDryRun();
+
+    @Inject
+    public CleanRfgCacheTask() {
+        getDryRun().convention(false);
+    }
+
+    @TaskAction
+    public void cleanCache() {
+        final boolean dryRun = getDryRun().get();
+        final long maxSizeBytes = getMaxSizeMb().map(mb -> mb * 1024L * 1024L).getOrElse(-1L);
+        final long maxAgeMs = getMaxAgeDays().map(days -> days * 24L * 60L * 60L * 1000L).getOrElse(-1L);
+        if (maxSizeBytes < 0 && maxAgeMs < 0) {
+            getLogger().warn(
+                    "No RFG cache limits configured, set the {} and/or {} Gradle properties to evict entries",
+                    RfgCacheService.MAX_CACHE_SIZE_PROPERTY,
+                    RfgCacheService.MAX_CACHE_AGE_PROPERTY);
+        }
+
+        final RfgCacheService.EvictionResult result = getCacheService().get()
+                .evictEntries(maxSizeBytes, maxAgeMs, dryRun);
+        for (final RfgCacheService.CacheEntry entry : result.evicted()) {
+            getLogger().info(
+                    "{} {} ({})",
+                    dryRun ? "Would evict" : "Evicted",
+                    entry.path(),
+                    FileUtils.byteCountToDisplaySize(entry.sizeBytes()));
+        }
+        getLogger().lifecycle(
+                "{} {} of {} entries, freeing {} of {} ({} kept)",
+                dryRun ? "Would evict" : "Evicted",
+                result.evicted().size(),
+                result.evicted().size() + result.keptCount(),
+                FileUtils.byteCountToDisplaySize(result.freedBytes()),
+                FileUtils.byteCountToDisplaySize(result.totalBytes()),
+                FileUtils.byteCountToDisplaySize(result.remainingBytes()));
+    }
+}
@@ -7,7 +7,6 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -45,14 +44,16 @@ import com.gtnewhorizons.retrofuturagradle.fgpatchers.McpCleanupFg12;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.McpCleanupFg23;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
+import com.gtnewhorizons.retrofuturagradle.util.MemoryJar;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 import com.gtnewhorizons.retrofuturagradle.util.patching.ContextualPatch;
 
 public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJarTransformTask {
 
-    private Map<String, byte[]> loadedResources = new HashMap<>();
-    private Map<String, String> loadedSources = new HashMap<>();
+    private MemoryJar loadedJar;
+    private Map<String, byte[]> loadedResources;
+    private Map<String, String> loadedSources;
 
     @InputDirectory
     @PathSensitive(PathSensitivity.RELATIVE)
@@ -90,12 +91,22 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
     @TaskAction
     public void doCleanup() throws IOException {
         taskTempDir = getTemporaryDir();
-        loadedResources.clear();
-        loadedSources.clear();
+        try (final MemoryJar jar = MemoryJar.load(getInputJar().get().getAsFile())) {
+            loadedJar = jar;
+            loadedResources = jar.getResources();
+            loadedSources = jar.getSources();
+            doCleanupStages();
+        } finally {
+            loadedJar = null;
+            loadedResources = null;
+            loadedSources = null;
+        }
+    }
 
+    private void doCleanupStages() throws IOException {
         getLogger().lifecycle("Fixup stage 1 - applying FF patches");
         final long pre1Ms = System.currentTimeMillis();
-        final File ffPatched = loadAndApplyFfPatches(getInputJar().get().getAsFile());
+        final File ffPatched = applyFfPatches();
         final long post1Ms = System.currentTimeMillis();
         getLogger().lifecycle("  Stage 1 took " + (post1Ms - pre1Ms) + " ms");
 
@@ -121,11 +132,10 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
         }
 
         getLogger().lifecycle("Saving the fixed-up jar");
-        Utilities.saveMemoryJar(loadedResources, loadedSources, getOutputJar().get().getAsFile(), false);
+        loadedJar.save(getOutputJar().get().getAsFile(), false, compressOutput());
     }
 
-    private File loadAndApplyFfPatches(File decompiled) throws IOException {
-        Utilities.loadMemoryJar(decompiled, loadedResources, loadedSources);
+    private File applyFfPatches() throws IOException {
         final int mcMinor = getMinorMcVersion().get();
 
         loadedSources = loadedSources.entrySet().parallelStream().map(entry -> {
@@ -141,8 +151,9 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
                 throw new RuntimeException(e);
             }
         }).collect(Collectors.toConcurrentMap(MutablePair::getLeft, MutablePair::getRight));
+        loadedJar.setSources(loadedSources);
 
-        return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "ffpatcher.jar"), true);
+        return loadedJar.save(new File(taskTempDir, "ffpatcher.jar"), true);
     }
 
     private File applyMcpPatches() throws IOException {
@@ -184,7 +195,7 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
             printPatchErrors(errors);
         }
 
-        return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "mcppatched.jar"), true);
+        return loadedJar.save(new File(taskTempDir, "mcppatched.jar"), true);
     }
 
     private static final Pattern BEFORE_RULE = Pattern
@@ -262,8 +273,9 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
                 throw new RuntimeException(e);
             }
         }).collect(Collectors.toConcurrentMap(MutablePair::getLeft, MutablePair::getRight));
+        loadedJar.setSources(loadedSources);
 
-        return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "mcpcleanup.jar"), true);
+        return loadedJar.save(new File(taskTempDir, "mcpcleanup.jar"), true);
     }
 
     private File injectPackageInfos() throws IOException {
@@ -299,7 +311,7 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
             }
         }
 
-        return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "pkginject.jar"), true);
+        return loadedJar.save(new File(taskTempDir, "pkginject.jar"), true);
     }
 
     private void printPatchErrors(List<ContextualPatch.PatchReport> errors) throws IOException {
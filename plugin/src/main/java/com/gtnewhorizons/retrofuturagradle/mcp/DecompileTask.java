@@ -2,7 +2,8 @@ package com.gtnewhorizons.retrofuturagradle.mcp;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -39,6 +40,7 @@ import com.gtnewhorizons.retrofuturagradle.java8.Fg23DecompTask;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @DisableCachingByDefault(because = "Uses an internal caching mechanism")
 public abstract class DecompileTask extends DefaultTask implements IJarTransformTask {
@@ -82,6 +84,12 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         return HashUtils.addPropertyToHash(getFernflower());
     }
 
+    @Override
+    public boolean canUseArtifactStore() {
+        // Already cached in the fernflower-cache directory
+        return false;
+    }
+
     @Inject
     abstract public WorkerExecutor getWorkerExecutor();
 
@@ -103,17 +111,45 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         final File cachedOutputFile = new File(
                 getCacheDir().get().getAsFile(),
                 fernflowerChecksum + "-" + inputFileChecksum + ".jar");
-        try (final FileLock ignored = getCacheService().get().lockCache(true)) {
+        final String lockKey = "fernflower-cache/" + cachedOutputFile.getName();
+        final RfgCacheService cacheService = getCacheService().get();
+        // The previous output may be a read-only link into the cache
+        Files.deleteIfExists(getOutputJar().get().getAsFile().toPath());
+        if (restoreCachedOutput(cacheService, lockKey, cachedOutputFile)) {
+            return;
+        }
+
+        // Only one build sharing the cache decompiles a given jar, the others wait for it to publish the output
+        if (!cacheService.awaitOrClaimProduction(lockKey, cachedOutputFile::isFile)) {
+            restoreCachedOutput(cacheService, lockKey, cachedOutputFile);
+            return;
+        }
+        try {
+            getLogger().lifecycle(
+                    "Didn't find cached decompiled jar, decompiling and saving to " + cachedOutputFile.getPath());
+            decompileIntoCache(cacheService, lockKey, cachedOutputFile, taskTempDir, minorMcVer);
+        } finally {
+            cacheService.releaseProduction(lockKey);
+        }
+    }
+
+    private boolean restoreCachedOutput(RfgCacheService cacheService, String lockKey, File cachedOutputFile)
+            throws IOException {
+        try (final RfgCacheService.CacheLock ignored = cacheService.lockEntry(lockKey, true)) {
             if (cachedOutputFile.exists()) {
                 getLogger().lifecycle("Using cached decompiled jar from " + cachedOutputFile.getPath());
-                FileUtils.copyFile(cachedOutputFile, getOutputJar().get().getAsFile());
-                return;
-            } else {
-                getLogger().lifecycle(
-                        "Didn't find cached decompiled jar, decompiling and saving to " + cachedOutputFile.getPath());
+                // Entries cached by older versions are still writable
+                Utilities.markImmutable(cachedOutputFile);
+                Utilities.linkOrCopyFile(cachedOutputFile, getOutputJar().get().getAsFile());
+                cacheService.markAccessed(cachedOutputFile.toPath());
+                return true;
             }
+            return false;
         }
+    }
 
+    private void decompileIntoCache(RfgCacheService cacheService, String lockKey, File cachedOutputFile,
+            File taskTempDir, int minorMcVer) throws IOException {
         getLogger().lifecycle("Decompiling the srg jar with fernflower");
         final long preDecompileMs = System.currentTimeMillis();
 
@@ -121,7 +157,7 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         ffoutdir.mkdirs();
         final File ffinpcopy = new File(taskTempDir, "mc.jar");
         final File ffoutfile = new File(ffoutdir, "mc.jar");
-        FileUtils.copyFile(getInputJar().get().getAsFile(), ffinpcopy);
+        Utilities.linkOrCopyFile(getInputJar().get().getAsFile(), ffinpcopy);
         if (minorMcVer <= 8) {
             decompileFg12(ffoutdir, ffinpcopy);
         } else {
@@ -129,18 +165,19 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         }
         FileUtils.delete(ffinpcopy);
 
-        try (final FileLock ignored = getCacheService().get().lockCache(false)) {
+        try (final RfgCacheService.CacheLock ignored = cacheService.lockEntry(lockKey, false)) {
             FileUtils.forceMkdirParent(cachedOutputFile);
-            FileUtils.copyFile(ffoutfile, cachedOutputFile);
+            if (Constants.DEBUG_NO_TMP_CLEANUP) {
+                FileUtils.copyFile(ffoutfile, cachedOutputFile);
+            } else {
+                Files.move(ffoutfile.toPath(), cachedOutputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Utilities.markImmutable(cachedOutputFile);
         }
-        FileUtils.copyFile(ffoutfile, getOutputJar().get().getAsFile());
+        Utilities.linkOrCopyFile(cachedOutputFile, getOutputJar().get().getAsFile());
 
         final long postDecompileMs = System.currentTimeMillis();
         getLogger().lifecycle("  Decompiling took " + (postDecompileMs - preDecompileMs) + " ms");
-
-        if (!Constants.DEBUG_NO_TMP_CLEANUP) {
-            FileUtils.deleteQuietly(ffoutfile);
-        }
     }
 
     private void decompileFg12(File ffoutdir, File ffinpcopy) {
@@ -17,7 +17,6 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +42,7 @@ import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
@@ -109,6 +109,12 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
     @Input
     public abstract Property<Integer> getMinorMcVersion();
 
+    /**
+     * Holds the precompiled binary mappings, the CSVs are parsed directly if not set.
+     */
+    @Internal
+    public abstract Property<RfgCacheService> getCacheService();
+
     @Override
     public MessageDigestConsumer hashInputs() {
         return HashUtils.addPropertyToHash(getAccessTransformerFiles())
@@ -161,31 +167,31 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
         }
     }
 
+    /**
+     * @return The method and field mappings applied to access transformer entries, empty if there are no CSVs
+     */
+    private Utilities.MappingsSet loadRenames() {
+        return Utilities.loadMappingCsvs(
+                getCacheService().getOrNull(),
+                getMethodCsv().getAsFile().getOrNull(),
+                getFieldCsv().getAsFile().getOrNull(),
+                null,
+                null,
+                null);
+    }
+
     private void applySpecialSourceFG12(File tempDeobfJar, Set<File> atFiles) throws IOException {
         final File originalInputFile = getInputJar().get().getAsFile();
-        // Work on a copy to make sure the original jar doesn't get modified
+        // Work on a read-only link or copy to make sure the original jar doesn't get modified
         final File inputFile = new File(taskTempDir, "input.jar");
-        FileUtils.copyFile(originalInputFile, inputFile);
+        Utilities.linkOrCopyFile(originalInputFile, inputFile);
         final JarMapping mapping = new JarMapping();
         mapping.loadMappings(getSrgFile().get().getAsFile());
-        final Map<String, String> renames = new HashMap<>();
-        for (File f : new File[] { getFieldCsv().getAsFile().getOrNull(), getMethodCsv().getAsFile().getOrNull() }) {
-            if (f == null) {
-                continue;
-            }
-            try (var lines = FileUtils.lineIterator(f)) {
-                lines.forEachRemaining(line -> {
-                    String[] parts = line.split(",");
-                    if (!"searge".equals(parts[0])) {
-                        renames.put(parts[0], parts[1]);
-                    }
-                });
-            }
-        }
+        final Utilities.MappingsSet renames = loadRenames();
 
         // Load access transformers
         getLogger().lifecycle("Loading {} AccessTransformers", atFiles.size());
-        RenamedAccessMapFG12 accessMap = new RenamedAccessMapFG12(renames);
+        RenamedAccessMapFG12 accessMap = new RenamedAccessMapFG12(renames::getMemberName);
         for (File atFile : atFiles) {
             getLogger().info("{}", atFile.getPath());
             getLogger().lifecycle("Loading AccessTransformer {}", atFile);
@@ -228,29 +234,16 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
 
     private void applySpecialSourceFG23(File tempDeobfJar, Set<File> atFiles) throws IOException {
         final File originalInputFile = getInputJar().get().getAsFile();
-        // Work on a copy to make sure the original jar doesn't get modified
+        // Work on a read-only link or copy to make sure the original jar doesn't get modified
         final File inputFile = new File(taskTempDir, "input.jar");
-        FileUtils.copyFile(originalInputFile, inputFile);
+        Utilities.linkOrCopyFile(originalInputFile, inputFile);
         final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarMapping mapping = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarMapping();
         mapping.loadMappings(getSrgFile().get().getAsFile());
-        final Map<String, String> renames = new HashMap<>();
-        for (File f : new File[] { getFieldCsv().getAsFile().getOrNull(), getMethodCsv().getAsFile().getOrNull() }) {
-            if (f == null) {
-                continue;
-            }
-            try (var lines = FileUtils.lineIterator(f)) {
-                lines.forEachRemaining(line -> {
-                    String[] parts = line.split(",");
-                    if (!"searge".equals(parts[0])) {
-                        renames.put(parts[0], parts[1]);
-                    }
-                });
-            }
-        }
+        final Utilities.MappingsSet renames = loadRenames();
 
         // Load access transformers
         getLogger().lifecycle("Loading {} AccessTransformers", atFiles.size());
-        RenamedAccessMapFG23 accessMap = new RenamedAccessMapFG23(renames);
+        RenamedAccessMapFG23 accessMap = new RenamedAccessMapFG23(renames::getMemberName);
         for (File atFile : atFiles) {
             getLogger().info("{}", atFile.getPath());
             accessMap.loadAccessTransformer(atFile);
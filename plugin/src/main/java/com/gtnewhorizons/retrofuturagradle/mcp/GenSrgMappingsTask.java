@@ -3,7 +3,6 @@ package com.gtnewhorizons.retrofuturagradle.mcp;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -91,7 +90,9 @@ public abstract class GenSrgMappingsTask extends DefaultTask {
         HashMap<String, String> methods = new HashMap<>(5000);
         HashMap<String, String> fields = new HashMap<>(5000);
 
-        try (final FileLock ignored = getCacheService().get().lockCache(false)) {
+        // Only serializes generation of the same set of SRGs, other mapping versions can be generated concurrently
+        final String lockKey = getNotchToSrg().get().getAsFile().getParentFile().getAbsolutePath();
+        try (final RfgCacheService.CacheLock ignored = getCacheService().get().lockEntry(lockKey, false)) {
 
             try (CSVReader csvReader = Utilities.createCsvReader(getMethodsCsv().get().getAsFile())) {
                 for (String[] line : csvReader) {
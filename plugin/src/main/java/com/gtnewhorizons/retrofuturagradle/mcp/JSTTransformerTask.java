@@ -52,7 +52,8 @@ public abstract class JSTTransformerTask extends DefaultTask implements IJarTran
     @Override
     public MessageDigestConsumer hashInputs() {
         return HashUtils.addPropertyToHash(getAccessTransformerFiles())
-                .andThen(HashUtils.addPropertyToHash(getInterfaceInjectionConfigs()));
+                .andThen(HashUtils.addPropertyToHash(getInterfaceInjectionConfigs()))
+                .andThen(HashUtils.addPropertyToHash(getJstTool()));
     }
 
     @InputFiles
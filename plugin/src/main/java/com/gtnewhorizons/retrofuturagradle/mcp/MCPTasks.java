@@ -16,6 +16,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 
@@ -167,7 +168,14 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
         preDecompATs = project.getObjects().fileCollection();
         interfaceInjectionConfigs = project.getObjects().fileCollection();
 
-        decompiledMcChain = new JarChain();
+        final boolean disableArtifactStore = Boolean.parseBoolean(
+                Optional.ofNullable(project.findProperty("rfg.disableArtifactStore")).orElse("false").toString());
+        final Provider<RfgCacheService> artifactStore = disableArtifactStore ? null : rfgCacheService;
+        final boolean compressIntermediateJars = Boolean.parseBoolean(
+                Optional.ofNullable(project.findProperty("rfg.compressIntermediateJars")).orElse("false").toString());
+
+        decompiledMcChain = new JarChain(artifactStore);
+        decompiledMcChain.setUncompressedIntermediates(!compressIntermediateJars);
 
         this.patchedConfiguration = project.getConfigurations().create(PATCHED_MINECRAFT_CONFIGURATION_NAME);
         this.patchedConfiguration.extendsFrom(mcTasks.getVanillaMcConfiguration());
@@ -280,7 +288,8 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
         decompiledMcChain.addTask(taskPatchDecompiledJar);
         decompiledMcChain.finish();
 
-        postprocessedMcChain = new JarChain();
+        postprocessedMcChain = new JarChain(artifactStore);
+        postprocessedMcChain.setUncompressedIntermediates(!compressIntermediateJars);
 
         postJSTJarLocation = FileUtils.getFile(buildDir, RFG_DIR, "post_jst_minecraft-sources.jar");
         taskApplyJST = project.getTasks().register("applyJST", JSTTransformerTask.class, task -> {
@@ -321,6 +330,8 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
                 }
             }));
             task.getAddJavadocs().set(true);
+            task.getCacheService().set(rfgCacheService);
+            task.usesService(rfgCacheService);
         });
         postprocessedMcChain.addTask(taskRemapDecompiledJar);
         postprocessedMcChain.finish();
@@ -797,6 +808,8 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
                     // Configured in afterEvaluate()
                     task.getAccessTransformerFiles().setFrom(preDecompATs, deobfuscationATs, extractedDependencyATs);
                     task.getMinorMcVersion().set(mcExt.getMinorMcVersion());
+                    task.getCacheService().set(rfgCacheService);
+                    task.usesService(rfgCacheService);
                 });
 
         obfRuntimeClasspathConfiguration = project.getConfigurations().create("obfuscatedRuntimeClasspath");
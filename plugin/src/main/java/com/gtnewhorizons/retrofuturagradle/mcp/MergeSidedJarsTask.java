@@ -18,14 +18,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.iterators.EnumerationIterator;
 import org.apache.commons.collections4.iterators.IteratorIterable;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.tuple.Pair;
@@ -52,6 +51,7 @@ import com.gtnewhorizons.retrofuturagradle.util.Distribution;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarOutputTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTask
@@ -104,22 +104,22 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
         final MergeConfig config = new MergeConfig(
                 getMergeConfigFile().getAsFile().getOrNull(),
                 getMergeConfig().getOrElse(Collections.emptyList()));
-        try (final ZipFile clientJar = new ZipFile(getClientJar().get().getAsFile());
-                final ZipFile serverJar = new ZipFile(getServerJar().get().getAsFile());
+        try (final ZipFile clientJar = ZipFile.builder().setFile(getClientJar().get().getAsFile()).get();
+                final ZipFile serverJar = ZipFile.builder().setFile(getServerJar().get().getAsFile()).get();
                 final FileOutputStream outFOS = new FileOutputStream(getOutputJar().get().getAsFile());
                 final BufferedOutputStream outBOS = new BufferedOutputStream(outFOS);
-                final ZipOutputStream outJar = new ZipOutputStream(outBOS)) {
+                final ParallelJarWriter outJar = new ParallelJarWriter(outBOS, compressOutput())) {
             final Set<String> resources = new HashSet<>();
-            final Map<String, ZipEntry> clientClasses = new HashMap<>();
-            final Map<String, ZipEntry> serverClasses = new HashMap<>();
+            final Map<String, ZipArchiveEntry> clientClasses = new HashMap<>();
+            final Map<String, ZipArchiveEntry> serverClasses = new HashMap<>();
             final Set<String> processedClasses = new HashSet<>();
 
             // Find classes and merge resources
-            for (Pair<Map<String, ZipEntry>, ZipFile> pair : ImmutableList
+            for (Pair<Map<String, ZipArchiveEntry>, ZipFile> pair : ImmutableList
                     .of(Pair.of(clientClasses, clientJar), Pair.of(serverClasses, serverJar))) {
                 final ZipFile jar = pair.getRight();
-                final Map<String, ZipEntry> classes = pair.getLeft();
-                for (ZipEntry entry : new IteratorIterable<>(new EnumerationIterator<>(jar.entries()))) {
+                final Map<String, ZipArchiveEntry> classes = pair.getLeft();
+                for (ZipArchiveEntry entry : new IteratorIterable<>(new EnumerationIterator<>(jar.getEntries()))) {
                     final String entryName = entry.getName();
                     if (entry.isDirectory() || "META-INF/MANIFEST.MF".equals(entryName)
                             || config.dontProcess.stream().anyMatch(entryName::startsWith)) {
@@ -128,9 +128,8 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
                     final boolean isResource = !entryName.endsWith(".class") || entryName.startsWith(".");
                     if (isResource) {
                         if (!resources.contains(entryName)) {
-                            final ZipEntry newEntry = new ZipEntry(entryName);
-                            outJar.putNextEntry(newEntry);
-                            outJar.write(Utilities.readZipEntry(jar, entry));
+                            // Resources are not modified, copy them without recompressing
+                            outJar.addRawEntry(jar, entry);
                             resources.add(entryName);
                         }
                     } else {
@@ -140,10 +139,10 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
             }
 
             // Process Client classes
-            for (Map.Entry<String, ZipEntry> entry : clientClasses.entrySet()) {
+            for (Map.Entry<String, ZipArchiveEntry> entry : clientClasses.entrySet()) {
                 final String className = entry.getKey(); // e.g. java/lang/Math
-                final ZipEntry clientEntry = entry.getValue();
-                final ZipEntry serverEntry = serverClasses.get(className);
+                final ZipArchiveEntry clientEntry = entry.getValue();
+                final ZipArchiveEntry serverEntry = serverClasses.get(className);
                 if (serverEntry == null) {
                     copySidedClass(config, clientJar, clientEntry, outJar, true);
                     processedClasses.add(className);
@@ -152,14 +151,12 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
                     byte[] clientData = Utilities.readZipEntry(clientJar, clientEntry);
                     byte[] serverData = Utilities.readZipEntry(serverJar, serverEntry);
                     byte[] mergedData = mergeClasses(clientData, serverData, className);
-                    ZipEntry mergedEntry = new ZipEntry(clientEntry.getName());
-                    outJar.putNextEntry(mergedEntry);
-                    outJar.write(mergedData);
+                    outJar.addEntry(clientEntry.getName(), mergedData);
                     processedClasses.add(className);
                 }
             }
             // Process remaining server classes
-            for (Map.Entry<String, ZipEntry> entry : serverClasses.entrySet()) {
+            for (Map.Entry<String, ZipArchiveEntry> entry : serverClasses.entrySet()) {
                 copySidedClass(config, serverJar, entry.getValue(), outJar, false);
             }
             // Add the Side&SideOnly classes to the jar
@@ -167,9 +164,7 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
                 final String entityName = klass.getName().replace('.', '/');
                 final String zipPath = entityName + ".class";
                 if (!processedClasses.contains(entityName)) {
-                    ZipEntry newEntry = new ZipEntry(zipPath);
-                    outJar.putNextEntry(newEntry);
-                    outJar.write(Utilities.getClassBytes(klass));
+                    outJar.addEntry(zipPath, Utilities.getClassBytes(klass));
                 }
             }
         }
@@ -230,8 +225,8 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
         final Set<String> dontProcess;
     }
 
-    private void copySidedClass(MergeConfig config, ZipFile inputJar, ZipEntry entry, ZipOutputStream outputJar,
-            boolean isClientOnly) throws IOException {
+    private void copySidedClass(MergeConfig config, ZipFile inputJar, ZipArchiveEntry entry,
+            ParallelJarWriter outputJar, boolean isClientOnly) throws IOException {
         ClassNode classNode = Utilities.parseClassBytes(Utilities.readZipEntry(inputJar, entry), entry.getName());
 
         // Annotate with @SideOnly(Side.SIDE)
@@ -244,9 +239,7 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
 
         byte[] annotatedClass = Utilities.emitClassBytes(classNode, ClassWriter.COMPUTE_MAXS);
         if (outputJar != null) {
-            ZipEntry newEntry = new ZipEntry(entry.getName());
-            outputJar.putNextEntry(newEntry);
-            outputJar.write(annotatedClass);
+            outputJar.addEntry(entry.getName(), annotatedClass);
         }
     }
 
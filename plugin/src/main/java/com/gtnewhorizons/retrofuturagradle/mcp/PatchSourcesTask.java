@@ -8,7 +8,6 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +32,7 @@ import org.gradle.api.tasks.TaskAction;
 import com.cloudbees.diff.PatchException;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
+import com.gtnewhorizons.retrofuturagradle.util.MemoryJar;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 import com.gtnewhorizons.retrofuturagradle.util.patching.ContextualPatch;
@@ -74,11 +74,12 @@ public abstract class PatchSourcesTask extends DefaultTask implements IJarTransf
             for (File dir : injectionDirectories.getFiles()) {
                 HashUtils.addDirContentsToHash(dir).accept(digest);
             }
-        }).andThen(HashUtils.addPropertyToHash(getMaxFuzziness()));
+        }).andThen(HashUtils.addPropertyToHash(getMaxFuzziness()))
+                .andThen(HashUtils.addPropertyToHash(getPathComponentsToStrip()));
     }
 
-    private final Map<String, byte[]> loadedResources = new HashMap<>();
-    private final Map<String, String> loadedSources = new HashMap<>();
+    private Map<String, byte[]> loadedResources;
+    private Map<String, String> loadedSources;
 
     @Inject
     public PatchSourcesTask() {
@@ -88,19 +89,23 @@ public abstract class PatchSourcesTask extends DefaultTask implements IJarTransf
 
     @TaskAction
     public void patchSources() throws IOException, PatchException {
-        loadedResources.clear();
-        loadedSources.clear();
-        Utilities.loadMemoryJar(getInputJar().get().getAsFile(), loadedResources, loadedSources);
-        getLogger().lifecycle(
-                "Patching sources: {} patch archives, {} injection directories",
-                getPatches().getFiles().size(),
-                getInjectionDirectories().getFiles().size());
-
-        injectFiles();
-
-        patchFiles();
-
-        Utilities.saveMemoryJar(loadedResources, loadedSources, getOutputJar().get().getAsFile(), false);
+        try (final MemoryJar jar = MemoryJar.load(getInputJar().get().getAsFile())) {
+            loadedResources = jar.getResources();
+            loadedSources = jar.getSources();
+            getLogger().lifecycle(
+                    "Patching sources: {} patch archives, {} injection directories",
+                    getPatches().getFiles().size(),
+                    getInjectionDirectories().getFiles().size());
+
+            injectFiles();
+
+            patchFiles();
+
+            jar.save(getOutputJar().get().getAsFile(), false, compressOutput());
+        } finally {
+            loadedResources = null;
+            loadedSources = null;
+        }
     }
 
     private void injectFiles() throws IOException {
@@ -4,10 +4,13 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,6 +18,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.gradle.api.DefaultTask;
@@ -25,6 +29,7 @@ import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
@@ -52,16 +57,25 @@ import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSol
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.gtnewhorizons.retrofuturagradle.BuildConfig;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.JavadocAdder;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
+import com.gtnewhorizons.retrofuturagradle.util.MemoryJar;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.SourceText;
+import com.gtnewhorizons.retrofuturagradle.util.SrgNameTable;
+import com.gtnewhorizons.retrofuturagradle.util.SrgScanner;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTask
 public abstract class RemapSourceJarTask extends DefaultTask implements IJarTransformTask {
 
     private static final boolean DEBUG_PRINT_ALL_GENERICS = false;
+    // [UPDATE] Generics version number
+    private static final int GENERICS_VERSION = 2;
 
     @InputFile
     @PathSensitive(PathSensitivity.NONE)
@@ -94,14 +108,19 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
     @Input
     public abstract Property<Boolean> getAddDummyJavadocs();
 
+    /**
+     * Holds the precompiled binary mappings, the CSVs are parsed directly if not set.
+     */
+    @Internal
+    public abstract Property<RfgCacheService> getCacheService();
+
     @Override
     public MessageDigestConsumer hashInputs() {
         return HashUtils.addPropertyToHash(getFieldCsv()).andThen(HashUtils.addPropertyToHash(getMethodCsv()))
                 .andThen(HashUtils.addPropertyToHash(getParamCsv()))
                 .andThen(HashUtils.addPropertyToHash(getExtraParamsCsvs()))
-                .andThen(HashUtils.addPropertyToHash(getGenericFieldsCsvName())).andThen(
-                        // [UPDATE] Generics version number
-                        HashUtils.addToHash(2))
+                .andThen(HashUtils.addPropertyToHash(getGenericFieldsCsvName()))
+                .andThen(HashUtils.addToHash(GENERICS_VERSION))
                 .andThen(HashUtils.addPropertyToHash(getAddJavadocs()))
                 .andThen(HashUtils.addPropertyToHash(getAddDummyJavadocs()));
     }
@@ -113,14 +132,10 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
         }
     }
 
-    private final Map<String, byte[]> loadedResources = new HashMap<>();
-    private final Map<String, String> loadedSources = new HashMap<>();
+    private Map<String, String> loadedSources;
 
     private Utilities.MappingsSet mappings = new Utilities.MappingsSet();
 
-    // Matches SRG-style names (func_123_g/field_1_p/p_123_1_)
-    private static final Pattern SRG_FINDER = Pattern
-            .compile("(func_\\d+_[a-zA-Z_]+|field_\\d+_[a-zA-Z_]+|p_\\w+_\\d+_)([^\\w$]|$)");
     private static final Pattern METHOD_DEFINITION = Pattern
             .compile("^((?: {4})+|\\t+)(?:[\\w$.\\[\\]]+ )+([0-9a-zA-Z_]+)\\(");
 
@@ -129,24 +144,91 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
     private static final Pattern FIELD_DEFINITION = Pattern
             .compile("^((?: {4})+|\\t+)(?:[\\w$.\\[\\]]+ )+(field_[0-9]+_[a-zA-Z_]+) *(?:=|;)");
 
+    /**
+     * The reverse index of the SRG names referenced by each source file, kept across builds to only remap the files
+     * affected by a mappings change.
+     */
+    private File getIndexFile() {
+        return new File(getTemporaryDir(), "remap-index.bin");
+    }
+
+    /**
+     * The output the index was built for, a link to the output jar where possible.
+     */
+    private File getIndexedOutputFile() {
+        return new File(getTemporaryDir(), "remap-index-output.jar");
+    }
+
     @TaskAction
     public void remapSources() throws IOException {
-        loadedResources.clear();
-        loadedSources.clear();
-        Utilities.loadMemoryJar(getInputJar().get().getAsFile(), loadedResources, loadedSources);
+        final File outputJar = getOutputJar().get().getAsFile();
+        try (final MemoryJar jar = MemoryJar.load(getInputJar().get().getAsFile())) {
+            loadedSources = jar.getSources();
+            final SourceRemapIndex index = remapLoadedSources();
+            // The previous output can be a read-only link to the indexed output, don't write through it
+            Files.deleteIfExists(outputJar.toPath());
+            jar.save(outputJar, false, compressOutput());
+            if (index != null) {
+                Utilities.markImmutable(outputJar);
+                Utilities.linkOrCopyFile(outputJar, getIndexedOutputFile());
+                index.write(getIndexFile());
+            }
+        } finally {
+            loadedSources = null;
+        }
+    }
+
+    /**
+     * @return A digest of all the inputs the remapped sources depend on, except for the mappings
+     */
+    private String hashIncrementalInputs() {
+        final MessageDigest digest = HashUtils.Fingerprint.MURMUR3_128.newDigest();
+        HashUtils.addToHash(BuildConfig.PLUGIN_VERSION).andThen(HashUtils.addPropertyToHash(getInputJar()))
+                .andThen(HashUtils.addPropertyToHash(getGenericFieldsCsvName()))
+                .andThen(HashUtils.addToHash(GENERICS_VERSION)).andThen(HashUtils.addPropertyToHash(getAddJavadocs()))
+                .andThen(HashUtils.addPropertyToHash(getAddDummyJavadocs())).accept(digest);
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * @return A hash of everything a name maps to, names are hashed as every kind since method definitions are looked
+     *         up by name whatever it looks like
+     */
+    private long hashSymbolMapping(String name) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Utilities.Mapping mapping : new Utilities.Mapping[] { mappings.methodMappings.get(name),
+                mappings.fieldMappings.get(name) }) {
+            hasher.putBoolean(mapping != null);
+            if (mapping != null) {
+                hasher.putString(mapping.name(), StandardCharsets.UTF_8).putInt(mapping.javadoc().length())
+                        .putString(mapping.javadoc(), StandardCharsets.UTF_8);
+            }
+        }
+        final String param = mappings.paramMappings.get(name);
+        hasher.putBoolean(param != null);
+        if (param != null) {
+            hasher.putString(param, StandardCharsets.UTF_8);
+        }
+        return hasher.hash().asLong();
+    }
 
+    /**
+     * The sources of a file after remapping, and the names it references if they were recorded.
+     */
+    private record RemappedSource(String text, Set<String> symbols) {}
+
+    /**
+     * @return The index of the remapped sources to save, or null if they can't be remapped incrementally
+     */
+    private SourceRemapIndex remapLoadedSources() throws IOException {
         mappings = Utilities.loadMappingCsvs(
+                getCacheService().getOrNull(),
                 getMethodCsv().get().getAsFile(),
                 getFieldCsv().get().getAsFile(),
                 getParamCsv().getAsFile().getOrNull(),
                 getExtraParamsCsvs().getFiles(),
                 getGenericFieldsCsvName().getOrNull());
 
-        final Matcher mSrg = SRG_FINDER.matcher("");
-        final Matcher mMethod = METHOD_DEFINITION.matcher("");
-        final Matcher mField = FIELD_DEFINITION.matcher("");
-        final Matcher mCtor = CONSTRUCTOR_DEFINITION.matcher("");
-
         final boolean addJavadocs = getAddJavadocs().get();
         final boolean addDummyJavadocs = getAddDummyJavadocs().get();
 
@@ -184,207 +266,58 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
             mappings.genericPatches.clear();
         }
 
-        final Set<String> paramsApplied = new HashSet<>(16);
-        for (Map.Entry<String, String> srcEntry : loadedSources.entrySet()) {
-            final String originalSrc = srcEntry.getValue();
-            final String[] originalLines = originalSrc.split("(\r\n)|\n|\r");
-            final ArrayList<String> newLines = new ArrayList<>(originalLines.length);
-
-            for (final String originalLine : originalLines) {
-                String newLine = originalLine;
-                mSrg.reset(originalLine);
-                mMethod.reset(originalLine);
-                mField.reset(originalLine);
-                mCtor.reset(originalLine);
-                paramsApplied.clear();
-                if (!newLine.trim().startsWith("return ")) {
-                    if (mMethod.find() && !Character.isUpperCase(mMethod.group(2).charAt(0))) {
-                        final String methodName = mMethod.group(2);
-                        final Utilities.Mapping methodMapping = mappings.methodMappings.get(methodName);
-                        if ((addJavadocs || addDummyJavadocs) && methodMapping != null
-                                && !methodMapping.javadoc().isEmpty()) {
-                            addBeforeAnnotations(
-                                    newLines,
-                                    addDummyJavadocs ? (mMethod.group(1) + "// JAVADOC METHOD $$ " + methodName)
-                                            : JavadocAdder
-                                                    .buildJavadoc(mMethod.group(1), methodMapping.javadoc(), true));
-                        }
-                        final List<Utilities.GenericMapping> genMaps = mappings.genericMappings.get(methodName);
-                        for (Utilities.GenericMapping genMap : genMaps) {
-                            if (!genMap.zipEntry.equals(srcEntry.getKey())) {
-                                continue;
-                            }
-                            if (paramsApplied.contains(genMap.param)) {
-                                continue;
-                            }
-                            final String[] typeComps = genMap.type.split("\\.");
-                            if (!newLine.contains(typeComps[typeComps.length - 1])) {
-                                continue;
-                            }
-                            genMap.uses++;
-                            paramsApplied.add(genMap.param);
-                            try {
-                                if (genMap.param.equals("@return")) {
-                                    final int parenIdx = newLine.indexOf('(');
-                                    final int nameIdx = newLine.substring(0, parenIdx).lastIndexOf(' ');
-                                    newLine = newLine.substring(0, nameIdx) + genMap.suffix
-                                            + newLine.substring(nameIdx);
-                                } else {
-                                    final int whichParam = Integer.parseInt(genMap.param);
-                                    final int paramsOffset = newLine.indexOf('(');
-                                    int paramStart = (whichParam == 0) ? (paramsOffset + 1)
-                                            : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
-                                    while (Character.isWhitespace(newLine.charAt(paramStart))) {
-                                        paramStart++;
-                                    }
-                                    int paramSplit = newLine.indexOf(' ', paramStart);
-                                    while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
-                                        paramSplit = newLine.indexOf(' ', paramSplit + 1);
-                                    }
-                                    if (paramSplit == -1) {
-                                        throw new IllegalStateException(
-                                                "Could not find param " + whichParam
-                                                        + " in line: |"
-                                                        + newLine
-                                                        + "| file: "
-                                                        + srcEntry.getKey()
-                                                        + ":"
-                                                        + (newLines.size() + 1));
-                                    }
-                                    newLine = newLine.substring(0, paramSplit) + genMap.suffix
-                                            + newLine.substring(paramSplit);
-                                }
-                            } catch (Exception e) {
-                                throw new IllegalStateException(
-                                        "Error applying generic mapping " + genMap
-                                                + " to line |"
-                                                + newLine
-                                                + "| file: "
-                                                + srcEntry.getKey()
-                                                + ":"
-                                                + (newLines.size() + 1));
-                            }
-                        }
-                    } else if ((addJavadocs || addDummyJavadocs) && originalLine.trim().startsWith("// JAVADOC ")) {
-                        if (mSrg.find()) {
-                            final String indent = originalLine.substring(0, originalLine.indexOf("// JAVADOC"));
-                            final String entityName = mSrg.group();
-                            if (entityName.startsWith("func_")) {
-                                final Utilities.Mapping methodMapping = mappings.methodMappings.get(entityName);
-                                if (methodMapping != null && !Strings.isNullOrEmpty(methodMapping.javadoc())) {
-                                    newLine = JavadocAdder.buildJavadoc(indent, methodMapping.javadoc(), true);
-                                }
-                            } else if (entityName.startsWith("field_")) {
-                                final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(entityName);
-                                if (fieldMapping != null && !Strings.isNullOrEmpty(fieldMapping.javadoc())) {
-                                    newLine = JavadocAdder.buildJavadoc(indent, fieldMapping.javadoc(), true);
-                                }
-                            }
-
-                            if (newLine.endsWith(System.lineSeparator())) {
-                                newLine = newLine.substring(0, newLine.length() - System.lineSeparator().length());
-                            }
-                        }
-                    } else if (mField.find()) {
-                        final String fieldName = mField.group(2);
-                        final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(fieldName);
-                        if ((addJavadocs || addDummyJavadocs) && fieldMapping != null
-                                && !fieldMapping.javadoc().isEmpty()) {
-                            addBeforeAnnotations(
-                                    newLines,
-                                    addDummyJavadocs ? (mField.group(1) + "// JAVADOC FIELD $$ " + fieldName)
-                                            : JavadocAdder
-                                                    .buildJavadoc(mField.group(1), fieldMapping.javadoc(), false));
-                        }
-                        final List<Utilities.GenericMapping> genMaps = mappings.genericMappings.get(fieldName);
-                        for (Utilities.GenericMapping genMap : genMaps) {
-                            if (!genMap.zipEntry.equals(srcEntry.getKey())) {
-                                continue;
-                            }
-                            genMap.uses++;
-                            final int splitIdx = newLine.indexOf(" field_");
-                            newLine = newLine.substring(0, splitIdx) + genMap.suffix + newLine.substring(splitIdx);
-                        }
-                    } else if (mCtor.find()) {
-                        final String key = srcEntry.getKey() + "@init:" + extractCtorSig(newLine, newLines.size() + 1);
-                        final List<Utilities.GenericMapping> genMaps = mappings.genericMappings.get(key);
-                        for (Utilities.GenericMapping genMap : genMaps) {
-                            if (!genMap.zipEntry.equals(srcEntry.getKey())) {
-                                continue;
-                            }
-                            if (paramsApplied.contains(genMap.param)) {
-                                continue;
-                            }
-                            final String[] typeComps = genMap.type.split("\\.");
-                            if (!newLine.contains(typeComps[typeComps.length - 1])) {
-                                continue;
-                            }
-                            genMap.uses++;
-                            paramsApplied.add(genMap.param);
-                            final int whichParam = Integer.parseInt(genMap.param);
-                            final int paramsOffset = newLine.indexOf('(');
-                            int paramStart = (whichParam == 0) ? (paramsOffset + 1)
-                                    : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
-                            while (Character.isWhitespace(newLine.charAt(paramStart))) {
-                                paramStart++;
-                            }
-                            int paramSplit = newLine.indexOf(' ', paramStart);
-                            while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
-                                paramSplit = newLine.indexOf(' ', paramSplit + 1);
-                            }
-                            if (paramSplit == -1) {
-                                throw new IllegalStateException(
-                                        "Could not find param " + whichParam
-                                                + " in line: |"
-                                                + newLine
-                                                + "| file: "
-                                                + srcEntry.getKey()
-                                                + ":"
-                                                + (newLines.size() + 1));
-                            }
-                            newLine = newLine.substring(0, paramSplit) + genMap.suffix + newLine.substring(paramSplit);
-                        }
-                    }
-                }
-                if (!mappings.genericMappings.isEmpty()) {
-                    // Extra patches
-                    newLine = newLine.replace("(Object)null", "null");
-                }
-                if (!DEBUG_PRINT_ALL_GENERICS) {
-                    final StringBuilder mappedLine = new StringBuilder();
-                    mSrg.reset(newLine);
-                    while (mSrg.find()) {
-                        final String found = mSrg.group(1);
-                        final String mapped;
-                        if (found.startsWith("p_")) {
-                            mapped = mappings.paramMappings.getOrDefault(found, found);
-                        } else if (found.startsWith("func_")) {
-                            final Utilities.Mapping mapping = mappings.methodMappings.get(found);
-                            mapped = (mapping != null) ? mapping.name() : found;
-                        } else if (found.startsWith("field_")) {
-                            final Utilities.Mapping mapping = mappings.fieldMappings.get(found);
-                            mapped = (mapping != null) ? mapping.name() : found;
-                        } else {
-                            mapped = found;
-                        }
-                        mSrg.appendReplacement(mappedLine, mapped);
-                        mappedLine.append(mSrg.group(2));
-                    }
-                    mSrg.appendTail(mappedLine);
-                    newLine = mappedLine.toString();
-
-                    final List<Utilities.GenericPatch> patches = mappings.genericPatches.get(srcEntry.getKey());
-                    for (Utilities.GenericPatch patch : patches) {
-                        if (newLine.contains(patch.containsFilter())) {
-                            newLine = newLine.replace(patch.toReplace(), patch.replaceWith());
-                        }
+        // When only the mappings changed, the files that don't reference any name with a changed mapping stay as
+        // they were in the previous output
+        final String inputsDigest = hashIncrementalInputs();
+        SourceRemapIndex previousIndex = DEBUG_PRINT_ALL_GENERICS ? null : SourceRemapIndex.read(getIndexFile());
+        Map<String, String> previousSources = null;
+        if (previousIndex != null && previousIndex.getInputsDigest().equals(inputsDigest)
+                && previousIndex.coversFiles(loadedSources.keySet())
+                && getIndexedOutputFile().isFile()) {
+            try (final MemoryJar previousJar = MemoryJar.load(getIndexedOutputFile())) {
+                previousSources = previousJar.getSources();
+            }
+            if (!previousSources.keySet().equals(loadedSources.keySet())) {
+                previousSources = null;
+            }
+        }
+        if (previousSources == null) {
+            previousIndex = null;
+        }
+        final Set<String> affectedFiles = (previousIndex == null) ? loadedSources.keySet()
+                : previousIndex.findAffectedFiles(this::hashSymbolMapping);
+        if (previousIndex != null) {
+            getLogger().lifecycle(
+                    "Only the mappings changed, remapping {} of {} source files",
+                    affectedFiles.size(),
+                    loadedSources.size());
+        }
+        final boolean recordSymbols = !DEBUG_PRINT_ALL_GENERICS && previousIndex == null;
+        final Map<String, String> unaffectedSources = previousSources;
+
+        // Each file is remapped independently, the results replace the original sources in the same order afterwards
+        final Map<String, RemappedSource> remappedSources = loadedSources.entrySet().parallelStream().collect(
+                Collectors.toMap(Map.Entry::getKey, entry -> {
+                    if (!affectedFiles.contains(entry.getKey())) {
+                        return new RemappedSource(unaffectedSources.get(entry.getKey()), null);
                     }
-                }
-                newLines.add(newLine);
+                    final Set<String> symbols = recordSymbols ? new HashSet<>() : null;
+                    final String text = remapSource(
+                            entry.getKey(),
+                            entry.getValue(),
+                            addJavadocs,
+                            addDummyJavadocs,
+                            symbols);
+                    return new RemappedSource(text, symbols);
+                }));
+        final Map<String, Set<String>> fileSymbols = new LinkedHashMap<>();
+        for (Map.Entry<String, String> srcEntry : loadedSources.entrySet()) {
+            final RemappedSource remapped = remappedSources.get(srcEntry.getKey());
+            srcEntry.setValue(remapped.text());
+            if (recordSymbols) {
+                fileSymbols.put(srcEntry.getKey(), remapped.symbols());
             }
 
-            srcEntry.setValue(StringUtils.join(newLines, System.lineSeparator()));
-
             if (DEBUG_PRINT_ALL_GENERICS) {
                 if (!srcEntry.getKey().startsWith("net/minecraft") && !srcEntry.getKey().startsWith("/net/minecraft")) {
                     continue;
@@ -395,21 +328,228 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
                 if (cu == null) {
                     getLogger().error("{}: {}", srcEntry.getKey(), result.toString());
                 }
-                printRawGenericFile(genLog, srcEntry, newLines, cu);
+                printRawGenericFile(genLog, srcEntry, SourceText.splitLines(srcEntry.getValue()), cu);
             }
         }
 
-        int totalGenericsApplied = 0;
-        for (Map.Entry<String, Utilities.GenericMapping> entry : mappings.genericMappings.entries()) {
-            totalGenericsApplied += entry.getValue().uses;
+        if (previousIndex != null) {
+            // The files kept from the previous output aren't counted
+            getLogger().lifecycle(
+                    "Applied {} missing generics to the {} remapped source files",
+                    mappings.countGenericMappingUses(),
+                    affectedFiles.size());
+        } else {
+            getLogger().lifecycle("Applied {} missing generics", mappings.countGenericMappingUses());
         }
-        getLogger().lifecycle("Applied {} missing generics", totalGenericsApplied);
 
         if (genLog != null) {
             genLog.close();
         }
 
-        Utilities.saveMemoryJar(loadedResources, loadedSources, getOutputJar().get().getAsFile(), false);
+        if (DEBUG_PRINT_ALL_GENERICS) {
+            return null;
+        } else if (previousIndex != null) {
+            return previousIndex.withMappings(this::hashSymbolMapping);
+        }
+        return SourceRemapIndex.build(inputsDigest, fileSymbols, this::hashSymbolMapping);
+    }
+
+    /**
+     * @param symbols If not null, collects the names in the file whose mappings can affect the remapped contents
+     * @return The remapped contents of a single source file
+     */
+    private String remapSource(String zipEntry, String originalSrc, boolean addJavadocs, boolean addDummyJavadocs,
+            Set<String> symbols) {
+        // Matchers aren't thread safe, so each file gets its own
+        final Matcher mMethod = METHOD_DEFINITION.matcher("");
+        final Matcher mField = FIELD_DEFINITION.matcher("");
+        final Matcher mCtor = CONSTRUCTOR_DEFINITION.matcher("");
+        final Set<String> paramsApplied = new HashSet<>(16);
+        final StringBuilder mappedLine = new StringBuilder();
+        final SrgNameTable nameTable = mappings.getNameTable();
+        final SrgScanner.NameMapper nameMapper = (symbols == null) ? nameTable::get : (line, start, end) -> {
+            symbols.add(line.substring(start, end));
+            return nameTable.get(line, start, end);
+        };
+        final Map<String, List<Utilities.GenericMapping>> fileGenerics = mappings.getGenericMappings(zipEntry);
+        final List<Utilities.GenericPatch> filePatches = mappings.getGenericPatches(zipEntry);
+        final List<String> originalLines = SourceText.splitLines(originalSrc);
+        final ArrayList<String> newLines = new ArrayList<>(originalLines.size());
+
+        for (final String originalLine : originalLines) {
+            String newLine = originalLine;
+            mMethod.reset(originalLine);
+            mField.reset(originalLine);
+            mCtor.reset(originalLine);
+            paramsApplied.clear();
+            // The definition regexes are only tried on lines that can match them, most lines can't
+            final boolean hasParens = originalLine.indexOf('(') != -1;
+            if (!newLine.trim().startsWith("return ")) {
+                if (hasParens && mMethod.find() && !Character.isUpperCase(mMethod.group(2).charAt(0))) {
+                    final String methodName = mMethod.group(2);
+                    if (symbols != null) {
+                        symbols.add(methodName);
+                    }
+                    final Utilities.Mapping methodMapping = mappings.methodMappings.get(methodName);
+                    if ((addJavadocs || addDummyJavadocs) && methodMapping != null
+                            && !methodMapping.javadoc().isEmpty()) {
+                        addBeforeAnnotations(
+                                newLines,
+                                addDummyJavadocs ? (mMethod.group(1) + "// JAVADOC METHOD $$ " + methodName)
+                                        : JavadocAdder
+                                                .buildJavadoc(mMethod.group(1), methodMapping.javadoc(), true));
+                    }
+                    final List<Utilities.GenericMapping> genMaps = fileGenerics.getOrDefault(methodName, List.of());
+                    for (Utilities.GenericMapping genMap : genMaps) {
+                        if (paramsApplied.contains(genMap.param)) {
+                            continue;
+                        }
+                        if (!newLine.contains(genMap.simpleTypeName)) {
+                            continue;
+                        }
+                        genMap.uses.incrementAndGet();
+                        paramsApplied.add(genMap.param);
+                        try {
+                            if (genMap.param.equals("@return")) {
+                                final int parenIdx = newLine.indexOf('(');
+                                final int nameIdx = newLine.substring(0, parenIdx).lastIndexOf(' ');
+                                newLine = newLine.substring(0, nameIdx) + genMap.suffix
+                                        + newLine.substring(nameIdx);
+                            } else {
+                                final int whichParam = Integer.parseInt(genMap.param);
+                                final int paramsOffset = newLine.indexOf('(');
+                                int paramStart = (whichParam == 0) ? (paramsOffset + 1)
+                                        : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
+                                while (Character.isWhitespace(newLine.charAt(paramStart))) {
+                                    paramStart++;
+                                }
+                                int paramSplit = newLine.indexOf(' ', paramStart);
+                                while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
+                                    paramSplit = newLine.indexOf(' ', paramSplit + 1);
+                                }
+                                if (paramSplit == -1) {
+                                    throw new IllegalStateException(
+                                            "Could not find param " + whichParam
+                                                    + " in line: |"
+                                                    + newLine
+                                                    + "| file: "
+                                                    + zipEntry
+                                                    + ":"
+                                                    + (newLines.size() + 1));
+                                }
+                                newLine = newLine.substring(0, paramSplit) + genMap.suffix
+                                        + newLine.substring(paramSplit);
+                            }
+                        } catch (Exception e) {
+                            throw new IllegalStateException(
+                                    "Error applying generic mapping " + genMap
+                                            + " to line |"
+                                            + newLine
+                                            + "| file: "
+                                            + zipEntry
+                                            + ":"
+                                            + (newLines.size() + 1));
+                        }
+                    }
+                } else if ((addJavadocs || addDummyJavadocs) && originalLine.trim().startsWith("// JAVADOC ")) {
+                    final int entityStart = SrgScanner.find(originalLine, 0);
+                    if (entityStart != -1) {
+                        final String indent = originalLine.substring(0, originalLine.indexOf("// JAVADOC"));
+                        final String entityName = originalLine
+                                .substring(entityStart, SrgScanner.nameEnd(originalLine, entityStart));
+                        if (symbols != null) {
+                            symbols.add(entityName);
+                        }
+                        if (entityName.startsWith("func_")) {
+                            final Utilities.Mapping methodMapping = mappings.methodMappings.get(entityName);
+                            if (methodMapping != null && !Strings.isNullOrEmpty(methodMapping.javadoc())) {
+                                newLine = JavadocAdder.buildJavadoc(indent, methodMapping.javadoc(), true);
+                            }
+                        } else if (entityName.startsWith("field_")) {
+                            final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(entityName);
+                            if (fieldMapping != null && !Strings.isNullOrEmpty(fieldMapping.javadoc())) {
+                                newLine = JavadocAdder.buildJavadoc(indent, fieldMapping.javadoc(), true);
+                            }
+                        }
+
+                        if (newLine.endsWith(System.lineSeparator())) {
+                            newLine = newLine.substring(0, newLine.length() - System.lineSeparator().length());
+                        }
+                    }
+                } else if (originalLine.contains("field_") && mField.find()) {
+                    final String fieldName = mField.group(2);
+                    if (symbols != null) {
+                        symbols.add(fieldName);
+                    }
+                    final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(fieldName);
+                    if ((addJavadocs || addDummyJavadocs) && fieldMapping != null
+                            && !fieldMapping.javadoc().isEmpty()) {
+                        addBeforeAnnotations(
+                                newLines,
+                                addDummyJavadocs ? (mField.group(1) + "// JAVADOC FIELD $$ " + fieldName)
+                                        : JavadocAdder
+                                                .buildJavadoc(mField.group(1), fieldMapping.javadoc(), false));
+                    }
+                    final List<Utilities.GenericMapping> genMaps = fileGenerics.getOrDefault(fieldName, List.of());
+                    for (Utilities.GenericMapping genMap : genMaps) {
+                        genMap.uses.incrementAndGet();
+                        final int splitIdx = newLine.indexOf(" field_");
+                        newLine = newLine.substring(0, splitIdx) + genMap.suffix + newLine.substring(splitIdx);
+                    }
+                } else if (hasParens && !fileGenerics.isEmpty() && mCtor.find()) {
+                    final String key = "@init:" + extractCtorSig(newLine, newLines.size() + 1);
+                    final List<Utilities.GenericMapping> genMaps = fileGenerics.getOrDefault(key, List.of());
+                    for (Utilities.GenericMapping genMap : genMaps) {
+                        if (paramsApplied.contains(genMap.param)) {
+                            continue;
+                        }
+                        if (!newLine.contains(genMap.simpleTypeName)) {
+                            continue;
+                        }
+                        genMap.uses.incrementAndGet();
+                        paramsApplied.add(genMap.param);
+                        final int whichParam = Integer.parseInt(genMap.param);
+                        final int paramsOffset = newLine.indexOf('(');
+                        int paramStart = (whichParam == 0) ? (paramsOffset + 1)
+                                : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
+                        while (Character.isWhitespace(newLine.charAt(paramStart))) {
+                            paramStart++;
+                        }
+                        int paramSplit = newLine.indexOf(' ', paramStart);
+                        while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
+                            paramSplit = newLine.indexOf(' ', paramSplit + 1);
+                        }
+                        if (paramSplit == -1) {
+                            throw new IllegalStateException(
+                                    "Could not find param " + whichParam
+                                            + " in line: |"
+                                            + newLine
+                                            + "| file: "
+                                            + zipEntry
+                                            + ":"
+                                            + (newLines.size() + 1));
+                        }
+                        newLine = newLine.substring(0, paramSplit) + genMap.suffix + newLine.substring(paramSplit);
+                    }
+                }
+            }
+            if (!mappings.genericMappings.isEmpty()) {
+                // Extra patches
+                newLine = newLine.replace("(Object)null", "null");
+            }
+            if (!DEBUG_PRINT_ALL_GENERICS) {
+                newLine = SrgScanner.remapLine(newLine, mappedLine, nameMapper);
+
+                for (Utilities.GenericPatch patch : filePatches) {
+                    if (newLine.contains(patch.containsFilter())) {
+                        newLine = newLine.replace(patch.toReplace(), patch.replaceWith());
+                    }
+                }
+            }
+            newLines.add(newLine);
+        }
+
+        return SourceText.joinLines(newLines);
     }
 
     private static String extractCtorSig(String line, int lineNo) {
@@ -92,8 +92,8 @@ public abstract class ReobfuscatedJar extends Jar {
             final File tmpObfedJar = new File(tmpDir, "working.jar");
             final File recompJar = new File(tmpDir, "recomp.jar");
             final File tmpInjectedJar = new File(tmpDir, "inject.jar");
-            FileUtils.copyFile(getInputJar().get().getAsFile(), tmpObfedJar);
-            FileUtils.copyFile(getRecompMcJar().get().getAsFile(), recompJar);
+            Utilities.linkOrCopyFile(getInputJar().get().getAsFile(), tmpObfedJar);
+            Utilities.linkOrCopyFile(getRecompMcJar().get().getAsFile(), recompJar);
 
             final File srg = File.createTempFile("reobf-default", ".srg", tmpDir);
             final File extraSrg = File.createTempFile("reobf-extra", ".srg", tmpDir);
@@ -3,42 +3,84 @@ package com.gtnewhorizons.retrofuturagradle.mcp;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.InetAddress;
 import java.net.URI;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.gradle.api.Project;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.services.BuildService;
 import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceRegistry;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
 import org.jetbrains.annotations.Nullable;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.gtnewhorizons.retrofuturagradle.Constants;
+import com.gtnewhorizons.retrofuturagradle.util.BinaryMappings;
+import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 /**
  * A shared build service that can fetch and provide cached forge, mapping, etc. data for various MC versions.
  */
-public abstract class RfgCacheService implements BuildService<RfgCacheService.Parameters>, Serializable {
+public abstract class RfgCacheService implements BuildService<RfgCacheService.Parameters>, Serializable,
+        AutoCloseable, OperationCompletionListener {
 
     public interface Parameters extends BuildServiceParameters {
 
         DirectoryProperty getGradleCacheDirectory();
+
+        /**
+         * @return The size the evictable part of the RFG cache is trimmed down to at the end of a build, unlimited if
+         *         not set.
+         */
+        Property<Long> getMaxCacheSizeMb();
+
+        /**
+         * @return How many days an unused evictable cache entry is kept for, unlimited if not set.
+         */
+        Property<Integer> getMaxCacheAgeDays();
     }
 
     /**
@@ -46,33 +88,130 @@ public abstract class RfgCacheService implements BuildService<RfgCacheService.Pa
      */
     public static final String NAME = "rfgCacheService";
 
-    private transient FileChannel cacheLockFile = null;
+    /**
+     * Gradle property setting {@link Parameters#getMaxCacheSizeMb()}.
+     */
+    public static final String MAX_CACHE_SIZE_PROPERTY = "rfg.cacheMaxSizeMb";
 
     /**
-     * Acquires a lock on the RFG cache directory.
-     * 
-     * @param shared Whether the lock can be shared with other shared locks (for reading only), if false it must be
-     *               exclusive (for writing).
-     * @return The lock acquired
+     * Gradle property setting {@link Parameters#getMaxCacheAgeDays()}.
      */
-    public FileLock lockCache(boolean shared) {
-        try {
-            final FileChannel channel;
-            Path lockFile = null;
-            synchronized (this) {
-                if (cacheLockFile == null) {
-                    final Path cacheDir = getRfgCachePath();
-                    if (!Files.isDirectory(cacheDir)) {
-                        Files.createDirectories(cacheDir);
+    public static final String MAX_CACHE_AGE_PROPERTY = "rfg.cacheMaxAgeDays";
+
+    /**
+     * How often the configured cache limits are enforced automatically at the end of a build.
+     */
+    private static final long AUTOMATIC_EVICTION_INTERVAL_MS = 24L * 60L * 60L * 1000L;
+
+    /**
+     * Number of lock files the cache entries are spread across, entries with keys hashing to different stripes can be
+     * written concurrently.
+     */
+    public static final int LOCK_STRIPE_COUNT = 32;
+
+    /**
+     * Lock stripes by lock file path, shared by all service instances within this JVM.
+     */
+    private static final ConcurrentHashMap<Path, LockStripe> LOCK_STRIPES = new ConcurrentHashMap<>();
+
+    /**
+     * A held lock on one or more stripes of the RFG cache, released on close.
+     */
+    public static final class CacheLock implements AutoCloseable {
+
+        private final List<Runnable> releasers;
+
+        private CacheLock(List<Runnable> releasers) {
+            this.releasers = releasers;
+        }
+
+        @Override
+        public void close() {
+            // Release in reverse order of acquisition
+            for (int i = releasers.size() - 1; i >= 0; i--) {
+                releasers.get(i).run();
+            }
+        }
+    }
+
+    /**
+     * A single lock file, paired with a JVM-wide read/write lock because Java file locks are held per-process and
+     * throw on overlapping requests from the same process.
+     */
+    private static final class LockStripe {
+
+        private final Path lockFile;
+        private final ReentrantReadWriteLock jvmLock = new ReentrantReadWriteLock(true);
+        private FileChannel channel = null;
+        private FileLock sharedFileLock = null;
+        private int sharedHolders = 0;
+
+        private LockStripe(Path lockFile) {
+            this.lockFile = lockFile;
+        }
+
+        private Runnable acquire(boolean shared) throws IOException {
+            if (shared) {
+                jvmLock.readLock().lock();
+                try {
+                    synchronized (this) {
+                        if (sharedHolders == 0) {
+                            sharedFileLock = lockChannel(true);
+                        }
+                        sharedHolders++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    jvmLock.readLock().unlock();
+                    throw e;
+                }
+                return this::releaseShared;
+            } else {
+                jvmLock.writeLock().lock();
+                final FileLock fileLock;
+                try {
+                    fileLock = lockChannel(false);
+                } catch (IOException | RuntimeException e) {
+                    jvmLock.writeLock().unlock();
+                    throw e;
+                }
+                return () -> {
+                    try {
+                        fileLock.release();
+                    } catch (IOException e) {
+                        LOGGER.warn("Could not release the RFG cache lock at {}", lockFile, e);
+                    } finally {
+                        jvmLock.writeLock().unlock();
+                    }
+                };
+            }
+        }
+
+        private void releaseShared() {
+            try {
+                synchronized (this) {
+                    sharedHolders--;
+                    if (sharedHolders == 0) {
+                        sharedFileLock.release();
+                        sharedFileLock = null;
                     }
-                    lockFile = cacheDir.resolve("rfg.lock");
-                    cacheLockFile = FileChannel.open(
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not release the RFG cache lock at {}", lockFile, e);
+            } finally {
+                jvmLock.readLock().unlock();
+            }
+        }
+
+        private FileLock lockChannel(boolean shared) throws IOException {
+            synchronized (this) {
+                if (channel == null) {
+                    Files.createDirectories(lockFile.getParent());
+                    channel = FileChannel.open(
                             lockFile,
                             StandardOpenOption.CREATE,
                             StandardOpenOption.WRITE,
                             StandardOpenOption.READ);
                 }
-                channel = cacheLockFile;
             }
             FileLock lock = null;
             int waitCount = 0;
@@ -81,6 +220,7 @@ public abstract class RfgCacheService implements BuildService<RfgCacheService.Pa
                 try {
                     lock = channel.lock(0, Long.MAX_VALUE, shared);
                 } catch (OverlappingFileLockException ofle) {
+                    // Still possible if the plugin is loaded by more than one classloader in this JVM
                     waitCount++;
                     if (waitCount == 5) {
                         LOGGER.warn("Waiting for the RFG cache lock at {} to get released...", lockFile);
@@ -94,6 +234,367 @@ public abstract class RfgCacheService implements BuildService<RfgCacheService.Pa
                 }
             }
             return lock;
+        }
+    }
+
+    private LockStripe getLockStripe(int index) {
+        final Path lockFile = getRfgCachePath().resolve("locks").resolve(String.format("stripe-%02d.lock", index));
+        return LOCK_STRIPES.computeIfAbsent(lockFile, LockStripe::new);
+    }
+
+    /**
+     * Acquires a lock on a single entry of the RFG cache. Entries are spread over {@value #LOCK_STRIPE_COUNT} lock
+     * files, so unrelated entries can usually be written concurrently while all users of the same entry are
+     * serialized. Locks are not reentrant across stripes: don't acquire a lock while holding another one.
+     *
+     * @param key    A stable identifier of the cache entry, e.g. its path relative to the cache root
+     * @param shared Whether the lock can be shared with other shared locks (for reading only), if false it must be
+     *               exclusive (for writing).
+     * @return The lock acquired, to be closed when done with the entry
+     */
+    public CacheLock lockEntry(String key, boolean shared) {
+        final LockStripe stripe = getLockStripe(Math.floorMod(key.hashCode(), LOCK_STRIPE_COUNT));
+        try {
+            return new CacheLock(Collections.singletonList(stripe.acquire(shared)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Acquires a lock on the whole RFG cache directory, by locking every stripe in order.
+     * 
+     * @param shared Whether the lock can be shared with other shared locks (for reading only), if false it must be
+     *               exclusive (for writing).
+     * @return The lock acquired, to be closed when done with the cache
+     */
+    public CacheLock lockCache(boolean shared) {
+        final List<Runnable> releasers = new ArrayList<>(LOCK_STRIPE_COUNT);
+        try {
+            for (int i = 0; i < LOCK_STRIPE_COUNT; i++) {
+                releasers.add(getLockStripe(i).acquire(shared));
+            }
+        } catch (IOException | RuntimeException e) {
+            new CacheLock(releasers).close();
+            throw (e instanceof IOException) ? new RuntimeException(e) : (RuntimeException) e;
+        }
+        return new CacheLock(releasers);
+    }
+
+    /**
+     * How long a production marker is trusted without being able to check if its owner is still alive.
+     */
+    private static final long PRODUCTION_MARKER_MAX_AGE_MS = 2L * 60L * 60L * 1000L;
+
+    /**
+     * Production markers held by any service instance in this JVM.
+     */
+    private static final Set<String> ACTIVE_PRODUCTION_MARKERS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Production markers held by this service instance, released when the build finishes even if a producer failed.
+     */
+    private final Set<String> ownedProductionMarkers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Production keys claimed by the task with the given path, released when that task finishes even if it failed
+     * before it could release them itself.
+     */
+    private final ConcurrentHashMap<String, Set<String>> productionClaimsByTask = new ConcurrentHashMap<>();
+
+    private static final String HOST_NAME = getHostName();
+    private static final String PROCESS_OWNER_ID = ProcessHandle.current().pid() + "@" + HOST_NAME;
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown-host";
+        }
+    }
+
+    private Path getProductionMarkerPath(final String key) {
+        return getRfgCachePath().resolve("producing").resolve(key.replaceAll("[^a-zA-Z0-9._-]", "_") + ".marker");
+    }
+
+    /**
+     * A marker is stale if its producer is known to be dead, or if it is too old to still be in progress.
+     */
+    private static boolean isProductionMarkerStale(final Path markerPath) throws IOException {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(markerPath, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+        if (lines.size() < 2) {
+            return true;
+        }
+        final String owner = lines.get(0).trim();
+        final long startedAt;
+        try {
+            startedAt = Long.parseLong(lines.get(1).trim());
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        if (System.currentTimeMillis() - startedAt > PRODUCTION_MARKER_MAX_AGE_MS) {
+            return true;
+        }
+        if (owner.equals(PROCESS_OWNER_ID)) {
+            // Left over from an earlier build in this JVM if no service instance holds it
+            return !ACTIVE_PRODUCTION_MARKERS.contains(markerPath.toString());
+        }
+        final int atIndex = owner.indexOf('@');
+        if (atIndex > 0 && owner.substring(atIndex + 1).equals(HOST_NAME)) {
+            try {
+                final long pid = Long.parseLong(owner.substring(0, atIndex));
+                return !ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+            } catch (NumberFormatException e) {
+                return true;
+            }
+        }
+        // Owned by another host sharing this cache directory, trust it until it expires
+        return false;
+    }
+
+    /**
+     * Waits until either the artifact identified by the key is published, or no other build is producing it, in
+     * which case the caller becomes its producer. A producer must call {@link #releaseProduction(String)} after
+     * publishing the artifact, or after failing to produce it.
+     *
+     * @param key         A stable identifier of the cache entry
+     * @param isPublished Checks if the artifact is available for reuse, called with the entry locked
+     * @return true if the caller must produce the artifact, false if it was published by someone else
+     */
+    public boolean awaitOrClaimProduction(final String key, final BooleanSupplier isPublished) {
+        final Path markerPath = getProductionMarkerPath(key);
+        boolean loggedWait = false;
+        int waitTime = 100;
+        try {
+            while (true) {
+                try (final CacheLock ignored = lockEntry(key, false)) {
+                    if (isPublished.getAsBoolean()) {
+                        return false;
+                    }
+                    if (!Files.exists(markerPath) || isProductionMarkerStale(markerPath)) {
+                        Files.createDirectories(markerPath.getParent());
+                        Files.writeString(
+                                markerPath,
+                                PROCESS_OWNER_ID + "\n" + System.currentTimeMillis() + "\n",
+                                StandardCharsets.UTF_8);
+                        ACTIVE_PRODUCTION_MARKERS.add(markerPath.toString());
+                        ownedProductionMarkers.add(markerPath.toString());
+                        return true;
+                    }
+                }
+                if (!loggedWait) {
+                    LOGGER.lifecycle("Waiting for another build to produce {} in the RFG cache...", key);
+                    loggedWait = true;
+                }
+                try {
+                    Thread.sleep(waitTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for " + key, e);
+                }
+                if (waitTime < 2000) {
+                    waitTime *= 2;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Like {@link #awaitOrClaimProduction(String, BooleanSupplier)}, for producers that can't release the claim in a
+     * finally block, such as a task claiming it in a {@code doFirst} action and releasing it in a {@code doLast}
+     * action. The claim is also released when the task finishes, so that a failing task doesn't keep other tasks of
+     * this build waiting for it.
+     *
+     * @param key         A stable identifier of the cache entry
+     * @param isPublished Checks if the artifact is available for reuse, called with the entry locked
+     * @param taskPath    The path of the task producing the artifact
+     * @return true if the caller must produce the artifact, false if it was published by someone else
+     */
+    public boolean awaitOrClaimProduction(final String key, final BooleanSupplier isPublished,
+            final String taskPath) {
+        if (!awaitOrClaimProduction(key, isPublished)) {
+            return false;
+        }
+        productionClaimsByTask.computeIfAbsent(taskPath, ignored -> ConcurrentHashMap.newKeySet()).add(key);
+        return true;
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        if (event instanceof TaskFinishEvent taskEvent) {
+            final Set<String> keys = productionClaimsByTask.remove(taskEvent.getDescriptor().getTaskPath());
+            if (keys != null) {
+                keys.forEach(this::releaseProduction);
+            }
+        }
+    }
+
+    /**
+     * Releases a production claim acquired by {@link #awaitOrClaimProduction(String, BooleanSupplier)}, waking up
+     * other builds waiting for the artifact.
+     *
+     * @param key A stable identifier of the cache entry
+     */
+    public void releaseProduction(final String key) {
+        releaseProductionMarker(getProductionMarkerPath(key).toString());
+    }
+
+    private void releaseProductionMarker(final String markerPath) {
+        if (!ownedProductionMarkers.remove(markerPath)) {
+            return;
+        }
+        ACTIVE_PRODUCTION_MARKERS.remove(markerPath);
+        try {
+            Files.deleteIfExists(Path.of(markerPath));
+        } catch (IOException e) {
+            LOGGER.warn("Could not remove the RFG cache production marker at {}", markerPath, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Tasks that failed between claiming and releasing a production marker
+        for (final String markerPath : new ArrayList<>(ownedProductionMarkers)) {
+            releaseProductionMarker(markerPath);
+        }
+        HashUtils.savePersistentFileHashCache();
+        final long maxSizeBytes = getParameters().getMaxCacheSizeMb().map(mb -> mb * 1024L * 1024L).getOrElse(-1L);
+        final long maxAgeMs = getParameters().getMaxCacheAgeDays().map(days -> days * 24L * 60L * 60L * 1000L)
+                .getOrElse(-1L);
+        if (maxSizeBytes < 0 && maxAgeMs < 0) {
+            return;
+        }
+        try {
+            final Path stampPath = getRfgCachePath().resolve("last-eviction");
+            if (Files.exists(stampPath) && System.currentTimeMillis()
+                    - Files.getLastModifiedTime(stampPath).toMillis() < AUTOMATIC_EVICTION_INTERVAL_MS) {
+                return;
+            }
+            final EvictionResult result = evictEntries(maxSizeBytes, maxAgeMs, false);
+            Files.createDirectories(stampPath.getParent());
+            Files.writeString(stampPath, Long.toString(System.currentTimeMillis()), StandardCharsets.UTF_8);
+            if (!result.evicted().isEmpty()) {
+                LOGGER.lifecycle(
+                        "Evicted {} unused entries ({}) from the RFG cache",
+                        result.evicted().size(),
+                        FileUtils.byteCountToDisplaySize(result.freedBytes()));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not trim the RFG cache", e);
+        }
+    }
+
+    /**
+     * An evictable file in the RFG cache.
+     *
+     * @param path         The location of the entry
+     * @param sizeBytes    The size of the entry
+     * @param lastAccessMs When the entry was last written or restored from the cache
+     */
+    public record CacheEntry(Path path, long sizeBytes, long lastAccessMs) {}
+
+    /**
+     * @param evicted        The entries evicted, or that would have been evicted in a dry run, least recently used
+     *                       first
+     * @param keptCount      The number of entries kept
+     * @param totalBytes     The size of all the evictable entries before eviction
+     * @param freedBytes     The size of the evicted entries
+     * @param remainingBytes The size of the evictable entries kept
+     */
+    public record EvictionResult(List<CacheEntry> evicted, int keptCount, long totalBytes, long freedBytes,
+            long remainingBytes) {}
+
+    /**
+     * The unpacked MCP data and Forge userdev directories are deliberately left out: builds reused from the
+     * configuration cache read them through paths resolved when the cache entry was stored, without downloading them
+     * again, and they also hold the SRG mappings generated by {@code generateForgeSrgMappings}.
+     *
+     * @return The directories holding entries that can be re-created on demand, and thus evicted
+     */
+    private List<Path> getEvictableRoots() {
+        return Arrays.asList(
+                getArtifactStorePath(),
+                getRfgCachePath().resolve("fernflower-cache"),
+                getClassRemapMemoPath(),
+                getBinaryMappingsPath());
+    }
+
+    /**
+     * Records a use of a cache entry for the least-recently-used eviction, the file's modification time is used as
+     * its access time since access times are often not tracked by the file system.
+     *
+     * @param entry The file that was reused from the cache
+     */
+    public void markAccessed(final Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOGGER.debug("Could not update the access time of {}", entry, e);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries of the evictable part of the cache (the artifact store, the decompiled jar
+     * cache, the dependency remap memo and the binary mappings) with the whole cache locked exclusively. Entries that
+     * can't be deleted are kept.
+     *
+     * @param maxSizeBytes The total size to trim the evictable entries down to, negative for no limit
+     * @param maxAgeMs     How long an entry can stay unused before it's evicted, negative for no limit
+     * @param dryRun       If true, only report what would be evicted
+     * @return What was (or would have been) evicted
+     */
+    public EvictionResult evictEntries(final long maxSizeBytes, final long maxAgeMs, final boolean dryRun) {
+        try (final CacheLock ignored = lockCache(false)) {
+            final List<CacheEntry> entries = new ArrayList<>();
+            for (final Path root : getEvictableRoots()) {
+                if (!Files.isDirectory(root)) {
+                    continue;
+                }
+                try (final Stream<Path> files = Files.walk(root)) {
+                    for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                        final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                        entries.add(new CacheEntry(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    }
+                }
+            }
+            entries.sort(Comparator.comparingLong(CacheEntry::lastAccessMs));
+
+            final long totalBytes = entries.stream().mapToLong(CacheEntry::sizeBytes).sum();
+            final long now = System.currentTimeMillis();
+            final List<CacheEntry> evicted = new ArrayList<>();
+            long remainingBytes = totalBytes;
+            for (final CacheEntry entry : entries) {
+                final boolean tooOld = maxAgeMs >= 0 && now - entry.lastAccessMs() > maxAgeMs;
+                final boolean tooBig = maxSizeBytes >= 0 && remainingBytes > maxSizeBytes;
+                if (!tooOld && !tooBig) {
+                    // Entries are sorted by access time, so all the following ones are newer
+                    break;
+                }
+                if (!dryRun) {
+                    try {
+                        Files.deleteIfExists(entry.path());
+                    } catch (IOException e) {
+                        // On Windows, binary mappings memory-mapped by this build can't be deleted until it ends
+                        LOGGER.debug("Could not evict {} from the RFG cache", entry.path(), e);
+                        continue;
+                    }
+                }
+                evicted.add(entry);
+                remainingBytes -= entry.sizeBytes();
+            }
+            return new EvictionResult(
+                    evicted,
+                    entries.size() - evicted.size(),
+                    totalBytes,
+                    totalBytes - remainingBytes,
+                    remainingBytes);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -103,10 +604,27 @@ public abstract class RfgCacheService implements BuildService<RfgCacheService.Pa
         return getParameters().getGradleCacheDirectory().getAsFile().get();
     }
 
-    public static void register(Gradle gradle) {
-        gradle.getSharedServices().registerIfAbsent(NAME, RfgCacheService.class, spec -> {
+    /**
+     * @param project        The project applying an RFG plugin
+     * @param eventsRegistry Used to release the production claims of tasks that failed, see
+     *                       {@link #awaitOrClaimProduction(String, BooleanSupplier, String)}
+     */
+    public static void register(Project project, BuildEventsListenerRegistry eventsRegistry) {
+        final Gradle gradle = project.getGradle();
+        final ProviderFactory providers = project.getProviders();
+        HashUtils.setPersistentFileHashCache(Utilities.getCacheRoot(gradle).toPath().resolve("file-hashes.bin"));
+        final BuildServiceRegistry services = gradle.getSharedServices();
+        final boolean firstRegistration = services.getRegistrations().findByName(NAME) == null;
+        final Provider<RfgCacheService> service = services.registerIfAbsent(NAME, RfgCacheService.class, spec -> {
             spec.getParameters().getGradleCacheDirectory().set(Utilities.getRawCacheRoot(gradle));
+            spec.getParameters().getMaxCacheSizeMb()
+                    .set(providers.gradleProperty(MAX_CACHE_SIZE_PROPERTY).map(Long::parseLong));
+            spec.getParameters().getMaxCacheAgeDays()
+                    .set(providers.gradleProperty(MAX_CACHE_AGE_PROPERTY).map(Integer::parseInt));
         });
+        if (firstRegistration) {
+            eventsRegistry.onTaskCompletion(service);
+        }
     }
 
     public static RfgCacheService access(Gradle gradle) {
@@ -126,6 +644,148 @@ public abstract class RfgCacheService implements BuildService<RfgCacheService.Pa
         return getGradleCacheDirectory().toPath().resolve("minecraft");
     }
 
+    /**
+     * @return The root of the content-addressed store of jar task outputs shared by all projects using this cache.
+     */
+    public Path getArtifactStorePath() {
+        return getRfgCachePath().resolve("artifacts");
+    }
+
+    private Path getArtifactPath(final String key) {
+        return getArtifactStorePath().resolve(key.substring(0, 2)).resolve(key + ".jar");
+    }
+
+    /**
+     * @param key The hex digest identifying the artifact
+     * @return true if the artifact was published to the content-addressed store
+     */
+    public boolean hasArtifact(final String key) {
+        return Files.isRegularFile(getArtifactPath(key));
+    }
+
+    /**
+     * Links or copies an artifact from the content-addressed store to the target location, if it was published before.
+     *
+     * @param key    The hex digest identifying the artifact
+     * @param target Where to put the copy of the artifact
+     * @return true if the artifact was found in the store and restored to the target
+     */
+    public boolean restoreArtifact(final String key, final File target) {
+        final Path storedPath = getArtifactPath(key);
+        try (final CacheLock ignored = lockEntry(key, true)) {
+            if (!Files.isRegularFile(storedPath)) {
+                return false;
+            }
+            Utilities.linkOrCopyFile(storedPath.toFile(), target);
+            markAccessed(storedPath);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Publishes a copy of the given file to the content-addressed store, does nothing if the key is already present.
+     * The file is then replaced by a read-only link to the stored copy where possible.
+     *
+     * @param key    The hex digest identifying the artifact
+     * @param source The file to store
+     */
+    public void publishArtifact(final String key, final File source) {
+        final Path storedPath = getArtifactPath(key);
+        try (final CacheLock ignored = lockEntry(key, false)) {
+            if (Files.isRegularFile(storedPath)) {
+                markAccessed(storedPath);
+                return;
+            }
+            final Path parentPath = storedPath.getParent();
+            Files.createDirectories(parentPath);
+            // Copy to a temporary file first so that an interrupted copy never leaves a truncated artifact behind
+            final Path tempPath = Files.createTempFile(parentPath, "rfg-store-", ".tmp");
+            Files.copy(source.toPath(), tempPath, StandardCopyOption.REPLACE_EXISTING);
+            Utilities.markImmutable(tempPath.toFile());
+            Files.move(tempPath, storedPath, StandardCopyOption.ATOMIC_MOVE);
+            // Share the disk space of the stored copy with the published file where possible
+            Utilities.tryLinkFile(storedPath.toFile(), source);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The directory of the last deobfuscated form of each dependency jar, and the index of the names its
+     *         classes looked up.
+     */
+    public Path getClassRemapMemoPath() {
+        return getRfgCachePath().resolve("class-remap");
+    }
+
+    /**
+     * @return The directory of the precompiled binary mappings, one file per distinct set of mapping CSVs.
+     */
+    public Path getBinaryMappingsPath() {
+        return getRfgCachePath().resolve("mappings");
+    }
+
+    /**
+     * Mappings loaded during this build by content key, shared by all the tasks and transforms loading the same CSVs.
+     * The values are soft references, so unused mappings are let go of when memory runs low.
+     */
+    private final Cache<String, Utilities.MappingsSet> loadedMappings = CacheBuilder.newBuilder().softValues()
+            .build();
+
+    /**
+     * Gets the method, field and param mappings loaded from the given CSVs. If no other task or transform of this
+     * build loaded them yet, their binary form is memory-mapped, compiling it into the cache first if these exact CSVs
+     * weren't used before.
+     *
+     * @param csvs   The CSVs the mappings are loaded from, in load order, null for CSVs that aren't used
+     * @param loader Loads the mappings from the CSVs
+     * @return The mappings shared by all users of these CSVs, with read-only method, field and param maps and no
+     *         generic mappings, see {@link Utilities.MappingsSet#MappingsSet(Utilities.MappingsSet)} to add some
+     */
+    public Utilities.MappingsSet loadBinaryMappings(final List<File> csvs,
+            final Supplier<Utilities.MappingsSet> loader) {
+        final MessageDigest keyHasher = DigestUtils.getSha256Digest();
+        HashUtils.addToHash(BinaryMappings.FORMAT_VERSION).accept(keyHasher);
+        for (final File csv : csvs) {
+            HashUtils.addToHash(csv == null ? 0 : 1).accept(keyHasher);
+            if (csv != null) {
+                HashUtils.addFileContentsToHash(csv).accept(keyHasher);
+            }
+        }
+        final String key = Hex.encodeHexString(keyHasher.digest());
+        return loadedMappings.asMap().computeIfAbsent(key, k -> openBinaryMappings(k, loader));
+    }
+
+    private Utilities.MappingsSet openBinaryMappings(final String key, final Supplier<Utilities.MappingsSet> loader) {
+        final Path binaryPath = getBinaryMappingsPath().resolve(key + ".bin");
+        try {
+            try (final CacheLock ignored = lockEntry(key, true)) {
+                if (Files.isRegularFile(binaryPath)) {
+                    markAccessed(binaryPath);
+                    return BinaryMappings.open(binaryPath.toFile());
+                }
+            }
+            // Not compiled yet, upgrade to a write lock and compile it
+            try (final CacheLock ignored = lockEntry(key, false)) {
+                // Could have been compiled in between calls
+                if (!Files.isRegularFile(binaryPath)) {
+                    final Path parentPath = binaryPath.getParent();
+                    Files.createDirectories(parentPath);
+                    // Write to a temporary file first so that an interrupted write never leaves a truncated file behind
+                    final Path tempPath = Files.createTempFile(parentPath, "rfg-mappings-", ".tmp");
+                    BinaryMappings.write(loader.get(), tempPath.toFile());
+                    Utilities.markImmutable(tempPath.toFile());
+                    Files.move(tempPath, binaryPath, StandardCopyOption.ATOMIC_MOVE);
+                }
+                return BinaryMappings.open(binaryPath.toFile());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @SuppressWarnings("unused") // used by Gradle
     @Inject
     public RfgCacheService() {}
@@ -134,14 +794,15 @@ public abstract class RfgCacheService implements BuildService<RfgCacheService.Pa
 
     private Path accessDownloadableZipData(final Path targetPath, final List<URI> downloadUris,
             @Nullable final Consumer<Path> prepareFolder) {
+        final String lockKey = getGradleCacheDirectory().toPath().relativize(targetPath).toString();
         try {
-            try (final FileLock ignored = lockCache(true)) {
+            try (final CacheLock ignored = lockEntry(lockKey, true)) {
                 if (Files.isDirectory(targetPath)) {
                     return targetPath;
                 }
             }
             // Path doesn't exist, upgrade to a write lock and fetch it
-            try (final FileLock ignored = lockCache(false)) {
+            try (final CacheLock ignored = lockEntry(lockKey, false)) {
                 // Could have been created in between calls
                 if (Files.isDirectory(targetPath)) {
                     return targetPath;
@@ -52,6 +52,8 @@ public class SharedMCPTasks<McExtType extends IMinecraftyExtension> {
     protected final File fernflowerLocation;
     protected final TaskProvider<Download> taskDownloadFernflower;
 
+    protected final TaskProvider<CleanRfgCacheTask> taskCleanRfgCache;
+
     protected final Provider<Directory> mcpExtractRoot;
     protected final Provider<Directory> userdevExtractRoot;
 
@@ -105,6 +107,17 @@ public class SharedMCPTasks<McExtType extends IMinecraftyExtension> {
         });
 
         final Provider<RfgCacheService> rfgCache = RfgCacheService.lazyAccess(project.getGradle());
+        taskCleanRfgCache = project.getTasks().register("cleanRfgCache", CleanRfgCacheTask.class, task -> {
+            task.setDescription(
+                    "Evicts the least recently used entries from the RFG cache, use --dry-run to only report them");
+            task.setGroup(TASK_GROUP_USER);
+            task.getCacheService().set(rfgCache);
+            task.usesService(rfgCache);
+            task.getMaxSizeMb().set(
+                    providers.gradleProperty(RfgCacheService.MAX_CACHE_SIZE_PROPERTY).map(Long::parseLong));
+            task.getMaxAgeDays().set(
+                    providers.gradleProperty(RfgCacheService.MAX_CACHE_AGE_PROPERTY).map(Integer::parseInt));
+        });
         mcpExtractRoot = layout.dir(
                 rfgCache.map(
                         c -> c.accessMcpMappings(
@@ -214,6 +227,10 @@ public class SharedMCPTasks<McExtType extends IMinecraftyExtension> {
         return fernflowerLocation;
     }
 
+    public TaskProvider<CleanRfgCacheTask> getTaskCleanRfgCache() {
+        return taskCleanRfgCache;
+    }
+
     public TaskProvider<Download> getTaskDownloadFernflower() {
         return taskDownloadFernflower;
     }
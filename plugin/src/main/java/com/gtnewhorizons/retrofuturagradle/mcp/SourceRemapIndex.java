@@ -0,0 +1,180 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Records which source files of a remapped jar reference each SRG name, along with a hash of the mapping each name had
+ * when the jar was remapped. When only the mappings change, this gives the files whose remapped text can differ, all
+ * the other files can be kept as they were. The same works for the classes of a deobfuscated dependency jar, with the
+ * names each class looked up.
+ */
+public final class SourceRemapIndex {
+
+    private static final Logger LOGGER = Logging.getLogger(SourceRemapIndex.class);
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * @param mappingHash The hash of what the name was mapped to
+     * @param files       Indices into the file list of the files referencing the name
+     */
+    private record Symbol(long mappingHash, int[] files) {}
+
+    private final String inputsDigest;
+    private final List<String> files;
+    private final Map<String, Symbol> symbols;
+
+    private SourceRemapIndex(String inputsDigest, List<String> files, Map<String, Symbol> symbols) {
+        this.inputsDigest = inputsDigest;
+        this.files = files;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @param inputsDigest  A digest of everything but the mappings that the remapped sources depend on
+     * @param fileSymbols   The SRG names referenced by each source file
+     * @param mappingHasher Hashes the current mapping of an SRG name
+     * @return A new index of the given references
+     */
+    public static SourceRemapIndex build(String inputsDigest, Map<String, ? extends Collection<String>> fileSymbols,
+            ToLongFunction<String> mappingHasher) {
+        final List<String> files = new ArrayList<>(fileSymbols.size());
+        final Map<String, List<Integer>> references = new HashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> file : fileSymbols.entrySet()) {
+            final int fileIndex = files.size();
+            files.add(file.getKey());
+            for (String symbol : file.getValue()) {
+                references.computeIfAbsent(symbol, k -> new ArrayList<>(4)).add(fileIndex);
+            }
+        }
+        final Map<String, Symbol> symbols = new LinkedHashMap<>(references.size() * 2);
+        references.forEach(
+                (symbol, fileIndices) -> symbols.put(
+                        symbol,
+                        new Symbol(
+                                mappingHasher.applyAsLong(symbol),
+                                fileIndices.stream().mapToInt(Integer::intValue).toArray())));
+        return new SourceRemapIndex(inputsDigest, files, symbols);
+    }
+
+    public String getInputsDigest() {
+        return inputsDigest;
+    }
+
+    /**
+     * @return Whether the index was built for exactly the given source files
+     */
+    public boolean coversFiles(Set<String> sourceFiles) {
+        return files.size() == sourceFiles.size() && sourceFiles.containsAll(files);
+    }
+
+    /**
+     * @param mappingHasher Hashes the current mapping of an SRG name
+     * @return The files referencing a name whose mapping changed since the index was built or last updated
+     */
+    public Set<String> findAffectedFiles(ToLongFunction<String> mappingHasher) {
+        final Set<String> affected = new HashSet<>();
+        for (Map.Entry<String, Symbol> symbol : symbols.entrySet()) {
+            if (mappingHasher.applyAsLong(symbol.getKey()) != symbol.getValue().mappingHash()) {
+                for (int fileIndex : symbol.getValue().files()) {
+                    affected.add(files.get(fileIndex));
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * The names referenced by each file only depend on the original sources, so the index of a remap with new
+     * mappings only differs by the mapping hashes.
+     *
+     * @param mappingHasher Hashes the current mapping of an SRG name
+     * @return A copy of this index with the current mapping hashes
+     */
+    public SourceRemapIndex withMappings(ToLongFunction<String> mappingHasher) {
+        final Map<String, Symbol> updated = new LinkedHashMap<>(symbols.size() * 2);
+        symbols.forEach(
+                (name, symbol) -> updated
+                        .put(name, new Symbol(mappingHasher.applyAsLong(name), symbol.files())));
+        return new SourceRemapIndex(inputsDigest, files, updated);
+    }
+
+    /**
+     * @return The index saved in the given file, or null if it doesn't exist or can't be read
+     */
+    public static SourceRemapIndex read(File indexFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(FileUtils.openInputStream(indexFile)))) {
+            if (dis.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final String inputsDigest = dis.readUTF();
+            final int fileCount = dis.readInt();
+            final List<String> files = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                files.add(dis.readUTF());
+            }
+            final int symbolCount = dis.readInt();
+            final Map<String, Symbol> symbols = new LinkedHashMap<>(symbolCount * 2);
+            for (int i = 0; i < symbolCount; i++) {
+                final String name = dis.readUTF();
+                final long mappingHash = dis.readLong();
+                final int[] fileIndices = new int[dis.readInt()];
+                for (int j = 0; j < fileIndices.length; j++) {
+                    fileIndices[j] = dis.readInt();
+                    if (fileIndices[j] < 0 || fileIndices[j] >= fileCount) {
+                        return null;
+                    }
+                }
+                symbols.put(name, new Symbol(mappingHash, fileIndices));
+            }
+            return new SourceRemapIndex(inputsDigest, files, symbols);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Could not read the remap index {}, remapping all files", indexFile, e);
+            return null;
+        }
+    }
+
+    public void write(File indexFile) {
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(FileUtils.openOutputStream(indexFile)))) {
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeUTF(inputsDigest);
+            dos.writeInt(files.size());
+            for (String file : files) {
+                dos.writeUTF(file);
+            }
+            dos.writeInt(symbols.size());
+            for (Map.Entry<String, Symbol> symbol : symbols.entrySet()) {
+                dos.writeUTF(symbol.getKey());
+                dos.writeLong(symbol.getValue().mappingHash());
+                dos.writeInt(symbol.getValue().files().length);
+                for (int fileIndex : symbol.getValue().files()) {
+                    dos.writeInt(fileIndex);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
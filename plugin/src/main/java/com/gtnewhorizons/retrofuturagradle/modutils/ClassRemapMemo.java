@@ -0,0 +1,216 @@
+package com.gtnewhorizons.retrofuturagradle.modutils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.gtnewhorizons.retrofuturagradle.BuildConfig;
+import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
+import com.gtnewhorizons.retrofuturagradle.mcp.SourceRemapIndex;
+import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.SrgNameTable;
+
+/**
+ * Remembers the last deobfuscated form of a dependency jar in the RFG cache, along with the SRG names each of its
+ * classes looked up. A remapped class only depends on its original bytes (fixed by the jar's hash) and on what these
+ * names are mapped to, so when the mappings change, the classes not looking up any name whose mapping changed are
+ * copied from the remembered jar without being remapped or compressed again.
+ */
+public final class ClassRemapMemo implements Closeable {
+
+    private static final Logger LOGGER = Logging.getLogger(ClassRemapMemo.class);
+    /**
+     * [UPDATE] Bump when changing what is remembered, old entries are then ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final RfgCacheService cacheService;
+    private final String key;
+    private final SrgNameTable mappings;
+    private final RfgCacheService.CacheLock readLock;
+    /** The index of the remembered jar, null if there's no usable one. */
+    private final SourceRemapIndex previousIndex;
+    private final ZipFile previousJar;
+    private final Set<String> affectedClasses;
+    /** The names looked up by each class, only recorded when there is no previous index to update. */
+    private final Map<String, Set<String>> classSymbols;
+
+    private ClassRemapMemo(RfgCacheService cacheService, String key, SrgNameTable mappings,
+            RfgCacheService.CacheLock readLock, SourceRemapIndex previousIndex, ZipFile previousJar,
+            Collection<String> classNames) {
+        this.cacheService = cacheService;
+        this.key = key;
+        this.mappings = mappings;
+        this.readLock = readLock;
+        this.previousIndex = previousIndex;
+        this.previousJar = previousJar;
+        if (previousIndex != null) {
+            this.affectedClasses = previousIndex.findAffectedFiles(this::hashMapping);
+            this.classSymbols = null;
+        } else {
+            this.affectedClasses = null;
+            // Filled up front, so that each class only ever touches its own set from the remapping threads
+            this.classSymbols = new LinkedHashMap<>(classNames.size() * 2);
+            for (String className : classNames) {
+                classSymbols.put(className, new HashSet<>());
+            }
+        }
+    }
+
+    /**
+     * Opens the memo of a dependency jar, holding a shared lock on it until closed.
+     *
+     * @param inputJar   The obfuscated jar
+     * @param classNames The names of all the class entries that will be remapped
+     * @param mappings   The mappings the jar is being remapped with
+     */
+    public static ClassRemapMemo open(RfgCacheService cacheService, File inputJar, Collection<String> classNames,
+            SrgNameTable mappings) throws IOException {
+        final String key = hashKey(inputJar);
+        final RfgCacheService.CacheLock readLock = cacheService.lockEntry(key, true);
+        try {
+            SourceRemapIndex index = SourceRemapIndex.read(getIndexPath(cacheService, key).toFile());
+            final Path jarPath = getJarPath(cacheService, key);
+            ZipFile jar = null;
+            if (index != null && index.getInputsDigest().equals(key)
+                    && index.coversFiles(new HashSet<>(classNames))
+                    && Files.isRegularFile(jarPath)) {
+                jar = ZipFile.builder().setFile(jarPath.toFile()).get();
+                cacheService.markAccessed(jarPath);
+            } else {
+                index = null;
+            }
+            final ClassRemapMemo memo = new ClassRemapMemo(
+                    cacheService,
+                    key,
+                    mappings,
+                    readLock,
+                    index,
+                    jar,
+                    classNames);
+            if (index != null) {
+                LOGGER.info(
+                        "Only the mappings changed since {} was last deobfuscated, remapping {} of {} classes",
+                        inputJar,
+                        memo.affectedClasses.size(),
+                        classNames.size());
+            }
+            return memo;
+        } catch (IOException | RuntimeException e) {
+            readLock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a class from the remembered jar if none of the names it looks up changed mappings.
+     *
+     * @return Whether the class was copied, if not it has to be remapped
+     */
+    public boolean copyUnaffectedClass(String className, ParallelJarWriter jos) throws IOException {
+        if (previousJar == null || affectedClasses.contains(className)) {
+            return false;
+        }
+        final ZipArchiveEntry entry = previousJar.getEntry(className);
+        if (entry == null) {
+            return false;
+        }
+        jos.addRawEntry(previousJar, entry);
+        return true;
+    }
+
+    /**
+     * @return The set to collect the names a remapped class looks up into, or null if they don't have to be recorded
+     */
+    public Set<String> getSymbolRecorder(String className) {
+        return (classSymbols == null) ? null : classSymbols.get(className);
+    }
+
+    /**
+     * Remembers the output jar as the deobfuscated form of the dependency with the current mappings, has to be called
+     * after the memo is closed and all the recorded classes are remapped.
+     */
+    public void store(File outputJar) {
+        if (previousIndex != null && affectedClasses.isEmpty()) {
+            // Nothing changed, the remembered jar is the same as the output
+            return;
+        }
+        final SourceRemapIndex index = (previousIndex != null) ? previousIndex.withMappings(this::hashMapping)
+                : SourceRemapIndex.build(key, classSymbols, this::hashMapping);
+        final Path jarPath = getJarPath(cacheService, key);
+        final Path indexPath = getIndexPath(cacheService, key);
+        try (final RfgCacheService.CacheLock ignored = cacheService.lockEntry(key, false)) {
+            final Path parentPath = jarPath.getParent();
+            Files.createDirectories(parentPath);
+            // Remove the index first, so that an interrupted update never leaves it describing another jar
+            Files.deleteIfExists(indexPath);
+            final Path tempJarPath = Files.createTempFile(parentPath, "rfg-memo-", ".tmp");
+            Files.copy(outputJar.toPath(), tempJarPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempJarPath, jarPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            final Path tempIndexPath = Files.createTempFile(parentPath, "rfg-memo-", ".tmp");
+            index.write(tempIndexPath.toFile());
+            Files.move(tempIndexPath, indexPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (previousJar != null) {
+                previousJar.close();
+            }
+        } finally {
+            readLock.close();
+        }
+    }
+
+    private static String hashKey(File inputJar) {
+        final MessageDigest digest = DigestUtils.getSha256Digest();
+        HashUtils.addToHash(BuildConfig.PLUGIN_VERSION).andThen(HashUtils.addToHash(FORMAT_VERSION))
+                .andThen(HashUtils.addFileContentsToHash(inputJar)).accept(digest);
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static Path getJarPath(RfgCacheService cacheService, String key) {
+        return cacheService.getClassRemapMemoPath().resolve(key.substring(0, 2)).resolve(key + ".jar");
+    }
+
+    private static Path getIndexPath(RfgCacheService cacheService, String key) {
+        return cacheService.getClassRemapMemoPath().resolve(key.substring(0, 2)).resolve(key + ".index");
+    }
+
+    /**
+     * @return A hash of what a name is mapped to
+     */
+    private long hashMapping(String name) {
+        final String mapped = mappings.get(name);
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putBoolean(mapped != null);
+        if (mapped != null) {
+            hasher.putString(mapped, StandardCharsets.UTF_8);
+        }
+        return hasher.hash().asLong();
+    }
+}
@@ -20,6 +20,7 @@ import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.options.Option;
 
 import com.gtnewhorizons.retrofuturagradle.mcp.RemapSourceJarTask;
+import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 /**
@@ -65,8 +66,16 @@ public abstract class DeobfuscateFileTaskBase extends DefaultTask {
     @Inject
     protected abstract ObjectFactory getObjectFactory();
 
+    /**
+     * Holds the precompiled binary mappings, the CSVs are parsed directly if not set.
+     */
+    @Internal
+    public abstract Property<RfgCacheService> getCacheService();
+
     @Inject
     public DeobfuscateFileTaskBase() {
+        getCacheService().convention(RfgCacheService.lazyAccess(getProject().getGradle()));
+        usesService(getCacheService());
         getOutputFile().convention(getInputFile().map(rf -> {
             File f = rf.getAsFile();
             String path = f.getPath();
@@ -92,6 +101,7 @@ public abstract class DeobfuscateFileTaskBase extends DefaultTask {
     @Internal
     public Utilities.MappingsSet getMappings() {
         return Utilities.loadMappingCsvs(
+                getCacheService().getOrNull(),
                 getMethodsCsv().getAsFile().get(),
                 getFieldsCsv().getAsFile().get(),
                 getParamsCsv().getAsFile().getOrNull(),
@@ -2,6 +2,8 @@ package com.gtnewhorizons.retrofuturagradle.modutils;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -16,10 +18,14 @@ import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CloseShieldInputStream;
@@ -48,6 +54,8 @@ import org.gradle.api.tasks.PathSensitivity;
 
 import com.google.common.io.Files;
 import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.SrgNameTable;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTransform
@@ -73,6 +81,13 @@ public abstract class DependencyDeobfuscationTransform
 
         @Input
         SetProperty<String> getModulesToDeobf();
+
+        /**
+         * Whether to read the jar through a {@link ZipFile} and remap its entries in parallel, rather than one by one
+         * through a {@link JarInputStream}. Both produce the same classes and manifest.
+         */
+        @Internal
+        Property<Boolean> getParallelDeobf();
     }
 
     @InputArtifact
@@ -143,56 +158,163 @@ public abstract class DependencyDeobfuscationTransform
         final File fieldsCsv = parameters.getFieldsCsv().get().getAsFile();
         final File methodsCsv = parameters.getMethodsCsv().get().getAsFile();
 
-        final Utilities.MappingsSet mappings = Utilities.loadMappingCsvs(methodsCsv, fieldsCsv, null, null, null);
-        final Map<String, String> combined = mappings.getCombinedMappings();
+        final Utilities.MappingsSet mappings = Utilities.loadMappingCsvs(
+                parameters.getMappingService().getOrNull(),
+                methodsCsv,
+                fieldsCsv,
+                null,
+                null,
+                null);
+        final SrgNameTable combined = mappings.getNameTable();
 
         if (outFile.isFile()) {
             FileUtils.delete(outFile);
         }
 
-        try (final InputStream is = FileUtils.openInputStream(inputLocation);
-                final BufferedInputStream bis = new BufferedInputStream(is);
-                final JarInputStream jis = new JarInputStream(bis, false);
-                final OutputStream os = FileUtils.openOutputStream(outFileTemp, false);
-                final BufferedOutputStream bos = new BufferedOutputStream(os);
-                final JarOutputStream jos = makeTransformerJarOutputStream(jis, bos)) {
-            JarEntry entry;
-            while ((entry = jis.getNextJarEntry()) != null) {
-                if (Strings.CI.endsWith(entry.getName(), ".dsa") || Strings.CI.endsWith(entry.getName(), ".rsa")
-                        || Strings.CI.endsWith(entry.getName(), ".sf")
-                        || Strings.CI.contains(entry.getName(), "meta-inf/sig-")) {
-                    continue;
-                }
-                jos.putNextEntry(new JarEntry(entry.getName()));
-                if (Strings.CI.endsWith(entry.getName(), ".class")) {
-                    byte[] data = IOUtils.toByteArray(jis);
-                    IOUtils.write(Utilities.simpleRemapClass(data, combined), jos);
-                } else if (Strings.CS.endsWith(entry.getName(), "META-INF/MANIFEST.MF")) {
-                    // This if will only trigger if the manifest is not one of the first 2 jar entries
-                    Manifest mf = new Manifest(CloseShieldInputStream.wrap(jis));
-                    transformManifest(mf);
-                    mf.write(jos);
-                } else {
-                    IOUtils.copy(jis, jos);
+        ClassRemapMemo memo = null;
+        if (parameters.getParallelDeobf().getOrElse(false)) {
+            // The writer is closed first, so that the entries are all read before the zip is closed
+            try (final ZipFile zip = ZipFile.builder().setFile(inputLocation).get();
+                    final OutputStream os = FileUtils.openOutputStream(outFileTemp, false);
+                    final BufferedOutputStream bos = new BufferedOutputStream(os);
+                    final ParallelJarWriter jos = new ParallelJarWriter(bos)) {
+                memo = deobfuscateInParallel(
+                        inputLocation,
+                        zip,
+                        jos,
+                        combined,
+                        parameters.getMappingService().getOrNull());
+            }
+        } else {
+            try (final InputStream is = FileUtils.openInputStream(inputLocation);
+                    final BufferedInputStream bis = new BufferedInputStream(is);
+                    final JarInputStream jis = new JarInputStream(bis, false);
+                    final OutputStream os = FileUtils.openOutputStream(outFileTemp, false);
+                    final BufferedOutputStream bos = new BufferedOutputStream(os);
+                    final ParallelJarWriter jos = new ParallelJarWriter(bos)) {
+                writeTransformedManifest(jis, jos);
+                JarEntry entry;
+                while ((entry = jis.getNextJarEntry()) != null) {
+                    if (isSignatureFile(entry.getName())) {
+                        continue;
+                    }
+                    if (entry.isDirectory()) {
+                        jos.addDirectory(entry.getName());
+                    } else if (Strings.CI.endsWith(entry.getName(), ".class")) {
+                        byte[] data = IOUtils.toByteArray(jis);
+                        jos.addEntry(entry.getName(), Utilities.simpleRemapClass(data, combined));
+                    } else if (Strings.CS.endsWith(entry.getName(), "META-INF/MANIFEST.MF")) {
+                        // This if will only trigger if the manifest is not one of the first 2 jar entries
+                        Manifest mf = new Manifest(CloseShieldInputStream.wrap(jis));
+                        transformManifest(mf);
+                        jos.addEntry(entry.getName(), manifestBytes(mf));
+                    } else {
+                        jos.addEntry(entry.getName(), IOUtils.toByteArray(jis));
+                    }
                 }
-                jos.closeEntry();
             }
         }
 
         Files.move(outFileTemp, outFile);
+        if (memo != null) {
+            memo.store(outFile);
+        }
+    }
+
+    private static boolean isSignatureFile(String name) {
+        return Strings.CI.endsWith(name, ".dsa") || Strings.CI.endsWith(name, ".rsa")
+                || Strings.CI.endsWith(name, ".sf")
+                || Strings.CI.contains(name, "meta-inf/sig-");
+    }
+
+    /**
+     * Writes the same jar as the {@link JarInputStream} loop, but with the classes read, remapped and compressed on
+     * the writer's thread pool, still in their original order. Resources are copied without recompressing them, and
+     * so are the classes that the memo of the previous mappings still has the right remapped form of.
+     *
+     * @param cacheService The cache holding the memo, or null to remap all the classes without one
+     * @return The closed memo, to store once the output jar is written, or null if there is no cache
+     */
+    private static ClassRemapMemo deobfuscateInParallel(File inputJar, ZipFile zip, ParallelJarWriter jos,
+            SrgNameTable combined, @Nullable RfgCacheService cacheService) throws IOException {
+        // In local header order, the order JarInputStream reads them in
+        final List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+        // Like JarInputStream, only take the manifest as the jar's manifest if it's one of the first 2 entries, and
+        // skip the META-INF/ directory entry before it
+        int first = 0;
+        if (first < entries.size() && entries.get(first).getName().equalsIgnoreCase("META-INF/")) {
+            first++;
+        }
+        if (first < entries.size() && entries.get(first).getName().equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            final Manifest mf = new Manifest(new ByteArrayInputStream(Utilities.readZipEntry(zip, entries.get(first))));
+            transformManifest(mf);
+            jos.addEntry(JarFile.MANIFEST_NAME, manifestBytes(mf));
+            first++;
+        }
+        final List<ZipArchiveEntry> remaining = entries.subList(first, entries.size());
+        if (cacheService == null) {
+            writeEntries(zip, remaining, jos, combined, null);
+            return null;
+        }
+        final List<String> classNames = new ArrayList<>();
+        for (final ZipArchiveEntry entry : remaining) {
+            if (isClassEntry(entry)) {
+                classNames.add(entry.getName());
+            }
+        }
+        try (final ClassRemapMemo memo = ClassRemapMemo.open(cacheService, inputJar, classNames, combined)) {
+            writeEntries(zip, remaining, jos, combined, memo);
+            return memo;
+        }
     }
 
-    private static JarOutputStream makeTransformerJarOutputStream(JarInputStream jis, OutputStream os)
-            throws IOException {
+    private static boolean isClassEntry(ZipArchiveEntry entry) {
+        return !entry.isDirectory() && !isSignatureFile(entry.getName())
+                && Strings.CI.endsWith(entry.getName(), ".class");
+    }
+
+    private static void writeEntries(ZipFile zip, List<ZipArchiveEntry> entries, ParallelJarWriter jos,
+            SrgNameTable combined, @Nullable ClassRemapMemo memo) throws IOException {
+        for (final ZipArchiveEntry entry : entries) {
+            final String name = entry.getName();
+            if (isSignatureFile(name)) {
+                continue;
+            }
+            if (entry.isDirectory()) {
+                jos.addDirectory(name);
+            } else if (isClassEntry(entry)) {
+                if (memo != null && memo.copyUnaffectedClass(name, jos)) {
+                    continue;
+                }
+                final Set<String> symbols = (memo == null) ? null : memo.getSymbolRecorder(name);
+                jos.addComputedEntry(
+                        name,
+                        -1,
+                        () -> Utilities.simpleRemapClass(Utilities.readZipEntry(zip, entry), combined, symbols));
+            } else if (Strings.CS.endsWith(name, "META-INF/MANIFEST.MF")) {
+                final Manifest mf = new Manifest(new ByteArrayInputStream(Utilities.readZipEntry(zip, entry)));
+                transformManifest(mf);
+                jos.addEntry(name, manifestBytes(mf));
+            } else {
+                jos.addRawEntry(zip, entry);
+            }
+        }
+    }
+
+    private static void writeTransformedManifest(JarInputStream jis, ParallelJarWriter jos) throws IOException {
         if (jis.getManifest() != null) {
             final Manifest mf = jis.getManifest();
             transformManifest(mf);
-            return new JarOutputStream(os, mf);
-        } else {
-            return new JarOutputStream(os);
+            jos.addEntry(JarFile.MANIFEST_NAME, manifestBytes(mf));
         }
     }
 
+    private static byte[] manifestBytes(Manifest mf) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mf.write(bytes);
+        return bytes.toByteArray();
+    }
+
     private static void transformManifest(Manifest mf) {
         final List<String> entriesToRemove = new ArrayList<>();
         for (Map.Entry<String, Attributes> mfEntry : mf.getEntries().entrySet()) {
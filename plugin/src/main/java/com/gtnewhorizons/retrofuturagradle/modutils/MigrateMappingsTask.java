@@ -27,6 +27,7 @@ import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.PathSensitive;
@@ -34,6 +35,7 @@ import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.options.Option;
 
+import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 public abstract class MigrateMappingsTask extends DefaultTask {
@@ -74,6 +76,12 @@ public abstract class MigrateMappingsTask extends DefaultTask {
     @Input
     public abstract Property<String> getSourceCompatibility();
 
+    /**
+     * Holds the precompiled binary mappings, the CSVs are parsed directly if not set.
+     */
+    @Internal
+    public abstract Property<RfgCacheService> getCacheService();
+
     @Inject
     public MigrateMappingsTask() {
         getInputDir().convention(getProject().getLayout().getProjectDirectory().dir("src/main/java"));
@@ -99,10 +107,12 @@ public abstract class MigrateMappingsTask extends DefaultTask {
         SrgFileReader.read(Files.newBufferedReader(srg.toPath()), "official", "srg", notchSrg);
 
         MemoryMappingTree sourceSrgMcp = new MemoryMappingTree();
-        Utilities.loadSrgMcpMappings(sourceSrgMcp, notchSrg, sourceMethods, sourceFields, null, null);
+        final RfgCacheService cacheService = getCacheService().getOrNull();
+        Utilities.loadSrgMcpMappings(cacheService, sourceSrgMcp, notchSrg, sourceMethods, sourceFields, null, null);
 
         MemoryMappingTree targetSrgMcp = new MemoryMappingTree();
         Utilities.loadSrgMcpMappings(
+                cacheService,
                 targetSrgMcp,
                 notchSrg,
                 new File(target, "methods.csv"),
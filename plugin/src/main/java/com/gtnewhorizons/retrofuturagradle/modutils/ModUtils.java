@@ -114,6 +114,9 @@ public class ModUtils {
         final boolean disableDependencyDeobfuscation = Boolean.parseBoolean(
                 Optional.ofNullable(project.findProperty("rfg.disableDependencyDeobfuscation")).orElse("false")
                         .toString());
+        final boolean parallelDependencyDeobfuscation = Boolean.parseBoolean(
+                Optional.ofNullable(project.findProperty("rfg.parallelDependencyDeobfuscation")).orElse("true")
+                        .toString());
 
         project.getTasks().register("applyDecompilerCleanupToMain", ApplyDecompCleanupTask.class, task -> {
             task.setGroup(TASK_GROUP_USER);
@@ -140,6 +143,8 @@ public class ModUtils {
             cp.from(
                     project.getExtensions().getByType(JavaPluginExtension.class).getSourceSets()
                             .getByName("injectedTags").getOutput());
+            task.getCacheService().set(RfgCacheService.lazyAccess(project.getGradle()));
+            task.usesService(RfgCacheService.lazyAccess(project.getGradle()));
         });
 
         if (!disableDependencyDeobfuscation) {
@@ -161,6 +166,7 @@ public class ModUtils {
                 params.getModulesToDeobf().set(depModulesToDeobf);
                 // can't use a true build service here due to gradle serialization errors
                 params.getMappingService().set(RfgCacheService.lazyAccess(project.getGradle()));
+                params.getParallelDeobf().set(parallelDependencyDeobfuscation);
             });
 
             project.afterEvaluate(_p -> {
@@ -118,6 +118,8 @@ public class PatchDevTasks extends SharedMCPTasks<RfgPatchdevExtension> {
                     task.getMethodCsv().set(taskGenerateForgeSrgMappings.flatMap(GenSrgMappingsTask::getMethodsCsv));
                     // No params - incompatible with the old patches
                     task.getAddJavadocs().set(false);
+                    task.getCacheService().set(rfgCacheService);
+                    task.usesService(rfgCacheService);
                 });
 
         final Provider<RegularFile> remappedPatchedSourcesLocation = buildDir.dir(RFG_DIR)
@@ -132,6 +134,8 @@ public class PatchDevTasks extends SharedMCPTasks<RfgPatchdevExtension> {
                     task.getMethodCsv().set(taskGenerateForgeSrgMappings.flatMap(GenSrgMappingsTask::getMethodsCsv));
                     // No params - incompatible with the old patches
                     task.getAddJavadocs().set(false);
+                    task.getCacheService().set(rfgCacheService);
+                    task.usesService(rfgCacheService);
                 });
 
         final JavaPluginExtension javaExt = project.getExtensions().getByType(JavaPluginExtension.class);
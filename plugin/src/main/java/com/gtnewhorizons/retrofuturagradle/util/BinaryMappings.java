@@ -0,0 +1,292 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A compact binary form of the MCP method, field and parameter mappings, read through a memory-mapped buffer instead
+ * of being parsed into maps. The file holds a header, one hash table per kind of mapping, and a pool of all the
+ * UTF-8 encoded strings they refer to:
+ *
+ * <pre>
+ * header: magic, version, methods table offset, fields table offset, params table offset
+ * table:  entry count, slot count, slots (entry index + 1, 0 if empty), entries
+ * entry:  SRG name hash, SRG name offset, MCP name offset, javadoc offset (-1 for params)
+ * string: UTF-8 byte length, UTF-8 bytes
+ * </pre>
+ *
+ * All offsets are from the start of the file, the hashes are {@link String#hashCode()}.
+ */
+public final class BinaryMappings {
+
+    private static final int MAGIC = 0x52464d50; // RFMP
+    /**
+     * [UPDATE] Bump when changing the layout, old files are then ignored.
+     */
+    public static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int ENTRY_SIZE = 4 * Integer.BYTES;
+
+    private BinaryMappings() {}
+
+    /**
+     * Writes the method, field and param mappings of a mapping set, generic mappings are not included.
+     */
+    public static void write(Utilities.MappingsSet mappings, File target) throws IOException {
+        final Map<String, Integer> pool = new HashMap<>();
+        final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        final List<int[]> methodEntries = new ArrayList<>(mappings.methodMappings.size());
+        final List<int[]> fieldEntries = new ArrayList<>(mappings.fieldMappings.size());
+        final List<int[]> paramEntries = new ArrayList<>(mappings.paramMappings.size());
+        mappings.methodMappings.forEach(
+                (srg, mapping) -> methodEntries.add(entry(pool, poolBytes, srg, mapping.name(), mapping.javadoc())));
+        mappings.fieldMappings.forEach(
+                (srg, mapping) -> fieldEntries.add(entry(pool, poolBytes, srg, mapping.name(), mapping.javadoc())));
+        mappings.paramMappings.forEach((srg, name) -> paramEntries.add(entry(pool, poolBytes, srg, name, null)));
+
+        final int methodsOffset = HEADER_SIZE;
+        final int fieldsOffset = methodsOffset + tableSize(methodEntries.size());
+        final int paramsOffset = fieldsOffset + tableSize(fieldEntries.size());
+        final int poolOffset = paramsOffset + tableSize(paramEntries.size());
+        try (final OutputStream os = FileUtils.openOutputStream(target);
+                final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(methodsOffset);
+            dos.writeInt(fieldsOffset);
+            dos.writeInt(paramsOffset);
+            writeTable(dos, methodEntries, poolOffset);
+            writeTable(dos, fieldEntries, poolOffset);
+            writeTable(dos, paramEntries, poolOffset);
+            poolBytes.writeTo(dos);
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(Utilities.MappingsSet, File)}, the mappings are read from it on demand.
+     *
+     * @return A mapping set with read-only method, field and param mappings
+     * @throws IOException If the file can't be read or has an unknown format
+     */
+    public static Utilities.MappingsSet open(File file) throws IOException {
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a binary mappings file of version " + FORMAT_VERSION + ": " + file);
+        }
+        return new Utilities.MappingsSet(
+                new Table<>(buffer, buffer.getInt(8), (name, javadoc) -> new Utilities.Mapping(name, javadoc)),
+                new Table<>(buffer, buffer.getInt(12), (name, javadoc) -> new Utilities.Mapping(name, javadoc)),
+                new Table<>(buffer, buffer.getInt(16), (name, javadoc) -> name));
+    }
+
+    /**
+     * @return The entry fields, with string offsets relative to the pool until its position is known
+     */
+    private static int[] entry(Map<String, Integer> pool, ByteArrayOutputStream poolBytes, String srg, String name,
+            String javadoc) {
+        return new int[] { srg.hashCode(), intern(pool, poolBytes, srg), intern(pool, poolBytes, name),
+                (javadoc == null) ? -1 : intern(pool, poolBytes, javadoc) };
+    }
+
+    private static int intern(Map<String, Integer> pool, ByteArrayOutputStream poolBytes, String value) {
+        return pool.computeIfAbsent(value, v -> {
+            final int offset = poolBytes.size();
+            final byte[] utf8 = v.getBytes(StandardCharsets.UTF_8);
+            poolBytes.write(utf8.length >>> 24);
+            poolBytes.write(utf8.length >>> 16);
+            poolBytes.write(utf8.length >>> 8);
+            poolBytes.write(utf8.length);
+            poolBytes.write(utf8, 0, utf8.length);
+            return offset;
+        });
+    }
+
+    private static int slotCount(int entryCount) {
+        // Keep the load factor at most 0.5 so that misses are found quickly
+        return Integer.highestOneBit(Math.max(2, entryCount * 2) - 1) << 1;
+    }
+
+    private static int tableSize(int entryCount) {
+        return 2 * Integer.BYTES + slotCount(entryCount) * Integer.BYTES + entryCount * ENTRY_SIZE;
+    }
+
+    private static int slotOf(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9 >>> 7 & mask;
+    }
+
+    private static void writeTable(DataOutputStream dos, List<int[]> entries, int poolOffset) throws IOException {
+        final int[] slots = new int[slotCount(entries.size())];
+        final int mask = slots.length - 1;
+        for (int i = 0; i < entries.size(); i++) {
+            int slot = slotOf(entries.get(i)[0], mask);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        dos.writeInt(entries.size());
+        dos.writeInt(slots.length);
+        for (int slot : slots) {
+            dos.writeInt(slot);
+        }
+        for (int[] entry : entries) {
+            dos.writeInt(entry[0]);
+            for (int i = 1; i < entry.length; i++) {
+                dos.writeInt((entry[i] < 0) ? -1 : poolOffset + entry[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueDecoder<V> {
+
+        V decode(String name, String javadoc);
+    }
+
+    /**
+     * A read-only map view of one table of a mapped file, safe to use from multiple threads as it only does absolute
+     * reads from the buffer.
+     */
+    private static final class Table<V> extends AbstractMap<String, V> {
+
+        private final ByteBuffer buffer;
+        private final int size;
+        private final int slotsOffset;
+        private final int mask;
+        private final int entriesOffset;
+        private final ValueDecoder<V> decoder;
+
+        private Table(ByteBuffer buffer, int offset, ValueDecoder<V> decoder) {
+            this.buffer = buffer;
+            this.size = buffer.getInt(offset);
+            final int slotCount = buffer.getInt(offset + Integer.BYTES);
+            this.slotsOffset = offset + 2 * Integer.BYTES;
+            this.mask = slotCount - 1;
+            this.entriesOffset = slotsOffset + slotCount * Integer.BYTES;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return findEntry(key) >= 0;
+        }
+
+        @Override
+        public V get(Object key) {
+            final int entry = findEntry(key);
+            return (entry < 0) ? null : decodeValue(entry);
+        }
+
+        /**
+         * @return The offset of the entry with the given key, or -1 if there is none
+         */
+        private int findEntry(Object key) {
+            if (!(key instanceof String name)) {
+                return -1;
+            }
+            final int hash = name.hashCode();
+            for (int slot = slotOf(hash, mask);; slot = (slot + 1) & mask) {
+                final int entryIndex = buffer.getInt(slotsOffset + slot * Integer.BYTES);
+                if (entryIndex == 0) {
+                    return -1;
+                }
+                final int entry = entriesOffset + (entryIndex - 1) * ENTRY_SIZE;
+                if (buffer.getInt(entry) == hash && stringEquals(buffer.getInt(entry + 4), name)) {
+                    return entry;
+                }
+            }
+        }
+
+        private boolean stringEquals(int offset, String expected) {
+            final int length = buffer.getInt(offset);
+            if (length != expected.length()) {
+                // Non-ASCII strings have more bytes than characters, and are compared decoded
+                return length > expected.length() && readString(offset).equals(expected);
+            }
+            for (int i = 0; i < length; i++) {
+                final byte b = buffer.get(offset + Integer.BYTES + i);
+                if (b < 0) {
+                    return readString(offset).equals(expected);
+                }
+                if (b != expected.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String readString(int offset) {
+            final byte[] utf8 = new byte[buffer.getInt(offset)];
+            buffer.get(offset + Integer.BYTES, utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        private V decodeValue(int entry) {
+            final int javadocOffset = buffer.getInt(entry + 12);
+            return decoder.decode(
+                    readString(buffer.getInt(entry + 8)),
+                    (javadocOffset < 0) ? null : readString(javadocOffset));
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return new AbstractSet<>() {
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    return new Iterator<>() {
+
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < size;
+                        }
+
+                        @Override
+                        public Entry<String, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final int entry = entriesOffset + (index++) * ENTRY_SIZE;
+                            return Map.entry(readString(buffer.getInt(entry + 4)), decodeValue(entry));
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
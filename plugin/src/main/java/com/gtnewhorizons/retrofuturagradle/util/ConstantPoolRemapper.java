@@ -0,0 +1,369 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renames SRG-named members of a class by editing its constant pool, without the full parse and rewrite of an ASM
+ * {@link org.objectweb.asm.commons.ClassRemapper} round-trip. Renames exactly what {@link SimpleSrgRemapper} does:
+ * field and method declarations, member references, invokedynamic and constant dynamic names, and annotation element
+ * names, but not string constants or debug names like local variable names.
+ * <p>
+ * A UTF8 constant can be shared by all of those, so a mapped name is not overwritten in place. The new name is
+ * appended to the constant pool instead, and only the name references are pointed to it. Nothing in a class file
+ * refers to a byte offset in the constant pool, so the rest of the class is copied as-is.
+ */
+public final class ConstantPoolRemapper {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+    private static final int MAX_CONSTANT_POOL_COUNT = 0xFFFF;
+
+    /**
+     * Thrown for class files this remapper can't handle, so that the caller falls back to ASM.
+     */
+    private static final class UnsupportedClassException extends Exception {
+
+        private UnsupportedClassException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final byte[] bytes;
+    private final SrgNameTable mappings;
+    private final Set<String> lookedUpNames;
+    /** The new name of each UTF8 constant holding a mapped SRG name, by constant pool index. */
+    private String[] renamed;
+    /** The offsets of the name references to redirect to a renamed constant. */
+    private final List<Integer> nameRefs = new ArrayList<>();
+    private int[] utf8Offsets;
+
+    private ConstantPoolRemapper(byte[] bytes, SrgNameTable mappings, Set<String> lookedUpNames) {
+        this.bytes = bytes;
+        this.mappings = mappings;
+        this.lookedUpNames = lookedUpNames;
+    }
+
+    /**
+     * @param classBytes The .class bytes to remap
+     * @param mappings   The combined mappings set to use for renaming items
+     * @return The remapped class, the same array if nothing had to be renamed, or null if the class has to be remapped
+     *         with ASM instead
+     */
+    public static byte[] remap(byte[] classBytes, SrgNameTable mappings) {
+        return remap(classBytes, mappings, null);
+    }
+
+    /**
+     * @param lookedUpNames If not null, collects the names looked up in the mappings
+     * @see #remap(byte[], SrgNameTable)
+     */
+    public static byte[] remap(byte[] classBytes, SrgNameTable mappings, Set<String> lookedUpNames) {
+        try {
+            return new ConstantPoolRemapper(classBytes, mappings, lookedUpNames).remap();
+        } catch (UnsupportedClassException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private byte[] remap() throws UnsupportedClassException {
+        if (u4(0) != 0xCAFEBABE) {
+            throw new UnsupportedClassException();
+        }
+        final int constantCount = u2(8);
+        final int constantPoolEnd = scanConstantPool(constantCount);
+        if (renamed == null) {
+            // No SRG names at all, by far the most common case
+            return bytes;
+        }
+        scanClassBody(constantPoolEnd);
+        if (nameRefs.isEmpty()) {
+            // The SRG names are only used as strings or debug names, which are kept
+            return bytes;
+        }
+
+        // Append one new constant per renamed name
+        final Map<Integer, Integer> newIndices = new LinkedHashMap<>();
+        final ByteArrayOutputStream newConstants = new ByteArrayOutputStream();
+        final DataOutputStream newConstantsOut = new DataOutputStream(newConstants);
+        try {
+            for (int nameRef : nameRefs) {
+                final int oldIndex = u2(nameRef);
+                if (!newIndices.containsKey(oldIndex)) {
+                    newIndices.put(oldIndex, constantCount + newIndices.size());
+                    newConstantsOut.writeByte(CONSTANT_UTF8);
+                    newConstantsOut.writeUTF(renamed[oldIndex]);
+                }
+            }
+        } catch (IOException e) {
+            // Names too long for a UTF8 constant
+            throw new UnsupportedClassException();
+        }
+        final int newConstantCount = constantCount + newIndices.size();
+        if (newConstantCount > MAX_CONSTANT_POOL_COUNT) {
+            throw new UnsupportedClassException();
+        }
+
+        final int insertedLength = newConstants.size();
+        final byte[] result = new byte[bytes.length + insertedLength];
+        System.arraycopy(bytes, 0, result, 0, constantPoolEnd);
+        System.arraycopy(newConstants.toByteArray(), 0, result, constantPoolEnd, insertedLength);
+        System.arraycopy(
+                bytes,
+                constantPoolEnd,
+                result,
+                constantPoolEnd + insertedLength,
+                bytes.length - constantPoolEnd);
+        putU2(result, 8, newConstantCount);
+        for (int nameRef : nameRefs) {
+            final int target = (nameRef < constantPoolEnd) ? nameRef : nameRef + insertedLength;
+            putU2(result, target, newIndices.get(u2(nameRef)));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the UTF8 constants holding mapped SRG names, and the name and type constants referring to them.
+     *
+     * @return The offset just past the constant pool
+     */
+    private int scanConstantPool(int constantCount) throws UnsupportedClassException {
+        utf8Offsets = new int[constantCount];
+        final List<Integer> nameAndTypeOffsets = new ArrayList<>();
+        final List<Integer> classOffsets = new ArrayList<>();
+        int offset = 10;
+        for (int index = 1; index < constantCount; index++) {
+            final int tag = u1(offset);
+            switch (tag) {
+                case CONSTANT_UTF8 -> {
+                    final int length = u2(offset + 1);
+                    utf8Offsets[index] = offset;
+                    checkSrgName(index, offset + 3, length);
+                    offset += 3 + length;
+                }
+                case CONSTANT_INTEGER, CONSTANT_FLOAT -> offset += 5;
+                case CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                    // Takes up two slots
+                    index++;
+                    offset += 9;
+                }
+                case CONSTANT_CLASS -> {
+                    classOffsets.add(offset);
+                    offset += 3;
+                }
+                case CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE, CONSTANT_PACKAGE -> offset += 3;
+                case CONSTANT_METHOD_HANDLE -> offset += 4;
+                case CONSTANT_NAME_AND_TYPE -> {
+                    nameAndTypeOffsets.add(offset);
+                    offset += 5;
+                }
+                case CONSTANT_FIELDREF, CONSTANT_METHODREF, CONSTANT_INTERFACE_METHODREF, CONSTANT_DYNAMIC,
+                        CONSTANT_INVOKE_DYNAMIC -> offset += 5;
+                default -> throw new UnsupportedClassException();
+            }
+        }
+        if (renamed != null) {
+            for (int classOffset : classOffsets) {
+                // Class names are mapped too, but SRG names are never class names
+                if (renamed[u2(classOffset + 1)] != null) {
+                    throw new UnsupportedClassException();
+                }
+            }
+            for (int nameAndTypeOffset : nameAndTypeOffsets) {
+                addNameRef(nameAndTypeOffset + 1);
+            }
+        }
+        return offset;
+    }
+
+    private void checkSrgName(int index, int start, int length) {
+        // func_, field_ or p_, and at least 4 characters
+        if (length < 4 || (bytes[start] != 'f' && bytes[start] != 'p')) {
+            return;
+        }
+        for (int i = start; i < start + length; i++) {
+            if (bytes[i] < 0) {
+                // SRG names are plain ASCII
+                return;
+            }
+        }
+        final String name = new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        if (lookedUpNames != null) {
+            lookedUpNames.add(name);
+        }
+        final String mapped = mappings.get(name);
+        if (mapped != null) {
+            if (renamed == null) {
+                renamed = new String[utf8Offsets.length];
+            }
+            renamed[index] = mapped;
+        }
+    }
+
+    private void addNameRef(int offset) {
+        if (renamed[u2(offset)] != null) {
+            nameRefs.add(offset);
+        }
+    }
+
+    private void scanClassBody(int offset) throws UnsupportedClassException {
+        // Access flags, this and super class
+        offset += 6;
+        offset += 2 + 2 * u2(offset);
+        // Fields, then methods
+        for (int memberKind = 0; memberKind < 2; memberKind++) {
+            final int memberCount = u2(offset);
+            offset += 2;
+            for (int i = 0; i < memberCount; i++) {
+                addNameRef(offset + 2);
+                offset = scanAttributes(offset + 6);
+            }
+        }
+        scanAttributes(offset);
+    }
+
+    /**
+     * @return The offset just past the attributes
+     */
+    private int scanAttributes(int offset) throws UnsupportedClassException {
+        final int attributeCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            final int nameIndex = u2(offset);
+            final int length = u4(offset + 2);
+            final int body = offset + 6;
+            offset = body + length;
+            if (nameIndex <= 0 || nameIndex >= utf8Offsets.length || utf8Offsets[nameIndex] == 0) {
+                throw new UnsupportedClassException();
+            }
+            switch (attributeName(nameIndex)) {
+                case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> scanAnnotations(body);
+                case "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" -> {
+                    final int parameterCount = u1(body);
+                    int annotations = body + 1;
+                    for (int parameter = 0; parameter < parameterCount; parameter++) {
+                        annotations = scanAnnotations(annotations);
+                    }
+                }
+                case "RuntimeVisibleTypeAnnotations", "RuntimeInvisibleTypeAnnotations" -> scanTypeAnnotations(body);
+                case "AnnotationDefault" -> scanElementValue(body);
+                case "Code" -> {
+                    final int codeLength = u4(body + 4);
+                    final int exceptionTable = body + 8 + codeLength;
+                    scanAttributes(exceptionTable + 2 + 8 * u2(exceptionTable));
+                }
+                case "Record" -> {
+                    final int componentCount = u2(body);
+                    int component = body + 2;
+                    for (int c = 0; c < componentCount; c++) {
+                        // Record component names aren't remapped, only their attributes are scanned
+                        component = scanAttributes(component + 4);
+                    }
+                }
+                default -> {}
+            }
+        }
+        return offset;
+    }
+
+    private String attributeName(int utf8Index) {
+        final int offset = utf8Offsets[utf8Index];
+        return new String(bytes, offset + 3, u2(offset + 1), StandardCharsets.ISO_8859_1);
+    }
+
+    private int scanAnnotations(int offset) throws UnsupportedClassException {
+        final int annotationCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < annotationCount; i++) {
+            offset = scanAnnotation(offset);
+        }
+        return offset;
+    }
+
+    private int scanAnnotation(int offset) throws UnsupportedClassException {
+        final int pairCount = u2(offset + 2);
+        offset += 4;
+        for (int i = 0; i < pairCount; i++) {
+            addNameRef(offset);
+            offset = scanElementValue(offset + 2);
+        }
+        return offset;
+    }
+
+    private int scanElementValue(int offset) throws UnsupportedClassException {
+        final char tag = (char) u1(offset);
+        offset++;
+        return switch (tag) {
+            case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> offset + 2;
+            case 'e' -> offset + 4;
+            case '@' -> scanAnnotation(offset);
+            case '[' -> {
+                final int valueCount = u2(offset);
+                offset += 2;
+                for (int i = 0; i < valueCount; i++) {
+                    offset = scanElementValue(offset);
+                }
+                yield offset;
+            }
+            default -> throw new UnsupportedClassException();
+        };
+    }
+
+    private void scanTypeAnnotations(int offset) throws UnsupportedClassException {
+        final int annotationCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < annotationCount; i++) {
+            // Skip the target_info, whose size depends on the target type, then the type_path
+            final int targetType = u1(offset);
+            offset += 1 + switch (targetType) {
+                case 0x00, 0x01, 0x16 -> 1;
+                case 0x10, 0x11, 0x12, 0x17, 0x42, 0x43, 0x44, 0x45, 0x46 -> 2;
+                case 0x13, 0x14, 0x15 -> 0;
+                case 0x40, 0x41 -> 2 + 6 * u2(offset + 1);
+                case 0x47, 0x48, 0x49, 0x4A, 0x4B -> 3;
+                default -> throw new UnsupportedClassException();
+            };
+            offset += 1 + 2 * u1(offset);
+            offset = scanAnnotation(offset);
+        }
+    }
+
+    private int u1(int offset) {
+        return bytes[offset] & 0xFF;
+    }
+
+    private int u2(int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private int u4(int offset) {
+        return (u2(offset) << 16) | u2(offset + 2);
+    }
+
+    private static void putU2(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 8);
+        target[offset + 1] = (byte) value;
+    }
+}
@@ -1,16 +1,28 @@
 package com.gtnewhorizons.retrofuturagradle.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -21,28 +33,207 @@ import org.gradle.api.file.ConfigurableFileTree;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 public class HashUtils {
 
     private HashUtils() {}
 
-    private static class FileHashCacheEntry {
+    /**
+     * The algorithms that inputs can be fingerprinted with, selected by the {@link MessageDigest} passed to a
+     * {@link MessageDigestConsumer}. SHA-256 is used where a digest is published as a cache key, the much faster
+     * non-cryptographic Murmur3 is enough for detecting changes within a project.
+     */
+    public enum Fingerprint {
+
+        SHA256("SHA-256"),
+        MURMUR3_128(Murmur3MessageDigest.ALGORITHM);
+
+        public final String algorithm;
+
+        Fingerprint(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public MessageDigest newDigest() {
+            return switch (this) {
+                case SHA256 -> DigestUtils.getSha256Digest();
+                case MURMUR3_128 -> new Murmur3MessageDigest();
+            };
+        }
+
+        /**
+         * @return The fingerprint matching the digest's algorithm, SHA-256 for unknown algorithms
+         */
+        public static Fingerprint of(MessageDigest digest) {
+            return Murmur3MessageDigest.ALGORITHM.equals(digest.getAlgorithm()) ? MURMUR3_128 : SHA256;
+        }
+    }
+
+    /**
+     * Exposes Guava's 128-bit Murmur3 as a {@link MessageDigest}, so it can be fed by the same consumers as SHA-256.
+     */
+    private static final class Murmur3MessageDigest extends MessageDigest {
+
+        private static final String ALGORITHM = "Murmur3-128";
+
+        private Hasher hasher = Hashing.murmur3_128().newHasher();
+
+        private Murmur3MessageDigest() {
+            super(ALGORITHM);
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            hasher.putByte(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            hasher.putBytes(input, offset, len);
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return 16;
+        }
 
-        public long lastModified;
-        public byte[] digest;
+        @Override
+        protected byte[] engineDigest() {
+            final byte[] digest = hasher.hash().asBytes();
+            engineReset();
+            return digest;
+        }
 
-        public FileHashCacheEntry(long lastModified, byte[] digest) {
-            this.lastModified = lastModified;
-            this.digest = digest;
+        @Override
+        protected void engineReset() {
+            hasher = Hashing.murmur3_128().newHasher();
         }
     }
 
+    /**
+     * @param size         The file size when it was hashed
+     * @param lastModified The file modification time when it was hashed
+     * @param fileKey      The file system identity of the file (e.g. device and inode), to detect replaced files
+     * @param digest       The digest of the file contents
+     */
+    private record FileHashCacheEntry(long size, long lastModified, String fileKey, byte[] digest) {}
+
     public static final boolean DEBUG_LOG = false;
 
-    private static DigestUtils utils = new DigestUtils(DigestUtils.getSha256Digest());
-    private static Map<File, FileHashCacheEntry> fileHashCache = new HashMap<>();
+    private static final int MAX_CACHED_FILE_HASHES = 16384;
+    private static final int PARALLEL_HASHING_THRESHOLD = 16;
+    /**
+     * Hashing is mostly I/O and SHA-256 bound, so a few threads are enough to saturate the disk.
+     */
+    private static final ForkJoinPool HASHING_POOL = new ForkJoinPool(
+            Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+    private static final int PERSISTENT_CACHE_VERSION = 2;
+    private static final Logger LOGGER = Logging.getLogger("RFG");
+
+    /**
+     * File digests by fingerprint algorithm and canonical path, shared by all the builds running in this daemon.
+     */
+    private static final Cache<String, FileHashCacheEntry> fileHashCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_FILE_HASHES).build();
+
+    private static final Object persistentCacheLock = new Object();
+    private static Path persistentCacheFile = null;
+    private static boolean persistentCacheLoaded = false;
+    private static final AtomicBoolean persistentCacheDirty = new AtomicBoolean(false);
+
+    /**
+     * Sets the file the digest cache is loaded from on the first use and saved to by
+     * {@link #savePersistentFileHashCache()}, so that cold daemons don't have to re-hash unchanged files.
+     */
+    public static void setPersistentFileHashCache(Path file) {
+        synchronized (persistentCacheLock) {
+            if (!file.equals(persistentCacheFile)) {
+                persistentCacheFile = file;
+                persistentCacheLoaded = false;
+            }
+        }
+    }
+
+    private static void loadPersistentFileHashCache() {
+        synchronized (persistentCacheLock) {
+            if (persistentCacheLoaded || persistentCacheFile == null) {
+                return;
+            }
+            persistentCacheLoaded = true;
+            if (!Files.isRegularFile(persistentCacheFile)) {
+                return;
+            }
+            try (final DataInputStream dis = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(persistentCacheFile)))) {
+                if (dis.readInt() != PERSISTENT_CACHE_VERSION) {
+                    return;
+                }
+                final int count = dis.readInt();
+                for (int i = 0; i < count; i++) {
+                    final String path = dis.readUTF();
+                    final long size = dis.readLong();
+                    final long lastModified = dis.readLong();
+                    final String fileKey = dis.readUTF();
+                    final byte[] digest = new byte[dis.readUnsignedByte()];
+                    dis.readFully(digest);
+                    fileHashCache.asMap()
+                            .putIfAbsent(path, new FileHashCacheEntry(size, lastModified, fileKey, digest));
+                }
+            } catch (IOException | RuntimeException e) {
+                // It's only a cache, files will get re-hashed
+                LOGGER.info("Could not load the file hash cache from {}", persistentCacheFile, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the digests cached in memory to the file set by {@link #setPersistentFileHashCache(Path)}, if any
+     * changed.
+     */
+    public static void savePersistentFileHashCache() {
+        synchronized (persistentCacheLock) {
+            if (persistentCacheFile == null || !persistentCacheDirty.getAndSet(false)) {
+                return;
+            }
+            try {
+                Files.createDirectories(persistentCacheFile.getParent());
+                final Path tempFile = Files.createTempFile(persistentCacheFile.getParent(), "file-hashes-", ".tmp");
+                final List<Map.Entry<String, FileHashCacheEntry>> entries = new ArrayList<>(
+                        fileHashCache.asMap().entrySet());
+                try (final DataOutputStream dos = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    dos.writeInt(PERSISTENT_CACHE_VERSION);
+                    dos.writeInt(entries.size());
+                    for (Map.Entry<String, FileHashCacheEntry> entry : entries) {
+                        final FileHashCacheEntry fhce = entry.getValue();
+                        dos.writeUTF(entry.getKey());
+                        dos.writeLong(fhce.size());
+                        dos.writeLong(fhce.lastModified());
+                        dos.writeUTF(fhce.fileKey());
+                        dos.writeByte(fhce.digest().length);
+                        dos.write(fhce.digest());
+                    }
+                }
+                // Concurrent builds overwrite each other's caches, which is fine as entries are validated on use
+                Files.move(
+                        tempFile,
+                        persistentCacheFile,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOGGER.info("Could not save the file hash cache to {}", persistentCacheFile, e);
+            }
+        }
+    }
 
     public static MessageDigestConsumer addToHash(String value) {
         if (DEBUG_LOG) {
@@ -77,25 +268,51 @@ public class HashUtils {
                 addToHash(0).accept(digest);
                 return;
             }
-            final File absoluteFile = file.getAbsoluteFile();
-            final FileHashCacheEntry cacheEntry = fileHashCache.compute(absoluteFile, (f, fhce) -> {
-                if (fhce == null || fhce.lastModified < f.lastModified()) {
-                    try {
-                        return new FileHashCacheEntry(f.lastModified(), utils.digest(f));
-                    } catch (IOException e) {
-                        throw new RuntimeException("Could not hash file " + f, e);
-                    }
-                } else {
-                    return fhce;
-                }
-            });
-            digest.update(cacheEntry.digest);
+            final byte[] fileDigest = getFileDigest(file, Fingerprint.of(digest));
+            digest.update(fileDigest);
             if (DEBUG_LOG) {
-                System.err.println(" = " + Hex.encodeHexString(cacheEntry.digest));
+                System.err.println(" = " + Hex.encodeHexString(fileDigest));
             }
         };
     }
 
+    /**
+     * @return The SHA-256 digest of the file's contents, cached until the file is modified or replaced
+     */
+    public static byte[] getFileDigest(File file) {
+        return getFileDigest(file, Fingerprint.SHA256);
+    }
+
+    /**
+     * @return The digest of the file's contents, cached until the file is modified or replaced
+     */
+    public static byte[] getFileDigest(File file, Fingerprint fingerprint) {
+        loadPersistentFileHashCache();
+        try {
+            final Path path = file.toPath().toRealPath();
+            final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            final long size = attrs.size();
+            final long lastModified = attrs.lastModifiedTime().toMillis();
+            final String fileKey = Objects.toString(attrs.fileKey(), "");
+            final String cacheKey = fingerprint.name() + ":" + path;
+            final FileHashCacheEntry cached = fileHashCache.getIfPresent(cacheKey);
+            if (cached != null && cached.size() == size
+                    && cached.lastModified() == lastModified
+                    && cached.fileKey().equals(fileKey)) {
+                return cached.digest();
+            }
+            final byte[] digest;
+            try (final InputStream is = Files.newInputStream(path)) {
+                digest = DigestUtils.digest(fingerprint.newDigest(), is);
+            }
+            fileHashCache.put(cacheKey, new FileHashCacheEntry(size, lastModified, fileKey, digest));
+            persistentCacheDirty.set(true);
+            return digest;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not hash file " + file, e);
+        }
+    }
+
     public static MessageDigestConsumer addDirContentsToHash(File dir) {
         if (DEBUG_LOG) {
             System.err.println("hash dir {" + dir + "}");
@@ -108,7 +325,7 @@ public class HashUtils {
             List<File> files = new ArrayList<>();
             files.addAll(CollectionUtils.collect(FileUtils.iterateFiles(dir, null, true), o -> o));
             files.sort(Comparator.naturalOrder());
-            files.forEach(f -> addFileContentsToHash(f).accept(digest));
+            addFilesContentsToHash(files, digest);
         };
     }
 
@@ -120,10 +337,31 @@ public class HashUtils {
             List<File> files = new ArrayList<>();
             files.addAll(fc.getFiles());
             files.sort(Comparator.naturalOrder());
-            files.forEach(f -> addFileContentsToHash(f).accept(digest));
+            addFilesContentsToHash(files, digest);
         };
     }
 
+    /**
+     * Hashes the given files in order, with the same result as calling {@link #addFileContentsToHash(File)} on each of
+     * them. Large lists are hashed on a bounded pool, and the per-file digests are folded in order afterwards.
+     */
+    private static void addFilesContentsToHash(List<File> sortedFiles, MessageDigest digest) {
+        if (DEBUG_LOG || sortedFiles.size() < PARALLEL_HASHING_THRESHOLD) {
+            sortedFiles.forEach(f -> addFileContentsToHash(f).accept(digest));
+            return;
+        }
+        final byte[] missingFileDigest = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0).array();
+        final Fingerprint fingerprint = Fingerprint.of(digest);
+        final byte[][] fileDigests = HASHING_POOL.submit(
+                () -> sortedFiles.parallelStream()
+                        .map(f -> f.exists() ? getFileDigest(f, fingerprint) : missingFileDigest)
+                        .toArray(byte[][]::new))
+                .join();
+        for (byte[] fileDigest : fileDigests) {
+            digest.update(fileDigest);
+        }
+    }
+
     public static MessageDigestConsumer addPropertyToHash(RegularFileProperty prop) {
         if (DEBUG_LOG) {
             System.err.println("hash rfp");
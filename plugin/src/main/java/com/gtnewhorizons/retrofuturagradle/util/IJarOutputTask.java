@@ -2,6 +2,8 @@ package com.gtnewhorizons.retrofuturagradle.util;
 
 import org.gradle.api.Task;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputFile;
 
 public interface IJarOutputTask extends Task {
@@ -14,4 +16,26 @@ public interface IJarOutputTask extends Task {
      */
     MessageDigestConsumer hashInputs();
 
+    /**
+     * @return Whether the output jar is only read by the next task of a {@link JarChain}, so it can be written without
+     *         compression. Not all tasks honor it, the ones running external tools write their jars as they are.
+     */
+    @Internal
+    Property<Boolean> getUncompressedOutput();
+
+    /**
+     * @return Whether the output jar entries should be compressed, the default for tasks outside of a chain
+     */
+    default boolean compressOutput() {
+        return !getUncompressedOutput().getOrElse(false);
+    }
+
+    /**
+     * @return Whether the output of this task can be shared between projects through the RFG artifact store, tasks
+     *         that keep their own cache of outputs should return false.
+     */
+    default boolean canUseArtifactStore() {
+        return true;
+    }
+
 }
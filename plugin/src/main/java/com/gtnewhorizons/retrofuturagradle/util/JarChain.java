@@ -3,6 +3,7 @@ package com.gtnewhorizons.retrofuturagradle.util;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -16,9 +17,13 @@ import org.apache.commons.io.FileUtils;
 import org.gradle.api.Action;
 import org.gradle.api.Task;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.StopExecutionException;
 import org.gradle.api.tasks.TaskProvider;
 
+import com.gtnewhorizons.retrofuturagradle.BuildConfig;
 import com.gtnewhorizons.retrofuturagradle.Constants;
+import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
 
 /**
  * A utility to remove outputs of intermediary tasks if the inputs don't change.
@@ -40,23 +45,65 @@ public class JarChain {
     }
 
     private List<TaskProvider<? extends IJarOutputTask>> taskChain = new ArrayList<>();
-    private boolean eager = false;
     private List<RegularFileProperty> taskChainOutputs = new ArrayList<>();
     private List<MessageDigestConsumer> taskChainHashers = new ArrayList<>();
+    /**
+     * Outputs of the hooked tasks, each stored next to a digest of the inputs of its stage and all the previous ones.
+     */
+    private List<RegularFileProperty> stageOutputs = new ArrayList<>();
+    /**
+     * Hashes the input jar of the first stage, which comes from outside of this chain, null if there is none.
+     */
+    private MessageDigestConsumer chainInputHasher = null;
 
-    private boolean wasUpToDate = false;
-    private long lastUpToDateCheck = -1;
+    private String[] stageDigests = null;
+    private long lastDigestCalculation = -1;
+
+    /**
+     * Content-addressed store to restore task outputs from, null if disabled.
+     */
+    private final Provider<RfgCacheService> artifactStore;
+    /**
+     * Algorithm of the stage digests, only used to detect changes so it doesn't have to be cryptographic.
+     */
+    private final HashUtils.Fingerprint fingerprint;
+    private int chainLength = 0;
+    /**
+     * Whether the outputs that are only read by the next task of the chain are written without compression.
+     */
+    private boolean uncompressedIntermediates = false;
+    private List<TaskProvider<? extends IJarOutputTask>> intermediateTasks = new ArrayList<>();
 
     public JarChain() {
-        //
+        this(null);
     }
 
-    private TaskProvider<? extends IJarOutputTask> getLastTask() {
-        return taskChain.isEmpty() ? null : taskChain.getLast();
+    /**
+     * @param artifactStore The cache service to share task outputs through, or null to always run the tasks.
+     */
+    public JarChain(Provider<RfgCacheService> artifactStore) {
+        this(artifactStore, HashUtils.Fingerprint.MURMUR3_128);
+    }
+
+    /**
+     * @param artifactStore The cache service to share task outputs through, or null to always run the tasks.
+     * @param fingerprint   The algorithm used to detect changes to the inputs of each stage.
+     */
+    public JarChain(Provider<RfgCacheService> artifactStore, HashUtils.Fingerprint fingerprint) {
+        this.artifactStore = artifactStore;
+        this.fingerprint = fingerprint;
     }
 
-    private RegularFileProperty getLastTaskOutput() {
-        return taskChainOutputs.isEmpty() ? null : taskChainOutputs.getLast();
+    /**
+     * Makes the tasks whose outputs get cleaned up write them without compression, saving a compress/decompress cycle
+     * per stage. The last task of the chain always writes a compressed jar.
+     */
+    public void setUncompressedIntermediates(boolean uncompressedIntermediates) {
+        this.uncompressedIntermediates = uncompressedIntermediates;
+    }
+
+    private TaskProvider<? extends IJarOutputTask> getLastTask() {
+        return taskChain.isEmpty() ? null : taskChain.getLast();
     }
 
     public void addTask(@Nonnull TaskProvider<? extends IJarOutputTask> newTask) {
@@ -69,13 +116,33 @@ public class JarChain {
         final IJarOutputTask eagerTask = newTask.get();
         if (action.doCleanup) {
             taskChainOutputs.add(eagerTask.getOutputJar());
+            intermediateTasks.add(newTask);
         }
         if (action.doHooks) {
-            taskChainHashers.add(eagerTask.hashInputs());
+            if (stageOutputs.isEmpty() && eagerTask instanceof IJarTransformTask transformTask) {
+                chainInputHasher = HashUtils.addPropertyToHash(transformTask.getInputJar());
+            }
+            final int stageIndex = stageOutputs.size();
+            final String taskType = eagerTask.getClass().getName();
+            taskChainHashers.add(HashUtils.addToHash(taskType).andThen(eagerTask.hashInputs()));
+            stageOutputs.add(eagerTask.getOutputJar());
             newTask.configure(task -> {
-                task.getOutputs().upToDateWhen(ignored -> this.isUpToDate());
-                task.onlyIf(ignored -> !this.isUpToDate());
+                task.getOutputs().upToDateWhen(ignored -> !this.isStageOutdated(stageIndex));
+                task.onlyIf(ignored -> this.isStageOutdated(stageIndex));
             });
+            if (artifactStore != null && eagerTask.canUseArtifactStore()) {
+                final int chainIndex = taskChain.size() - 1;
+                newTask.configure(task -> {
+                    task.usesService(artifactStore);
+                    task.doFirst(
+                            "Restore from the RFG artifact store",
+                            new RestoreArtifactAction(chainIndex, stageIndex));
+                    task.doLast("Publish to the RFG artifact store", new PublishArtifactAction());
+                });
+            }
+            newTask.configure(task -> task.doLast("Save Jar Chain stage digest", new StageDigestAction(stageIndex)));
+            // Registered last so that it runs before any other doFirst action, including the artifact store restore
+            newTask.configure(task -> task.doFirst("Delete previous Jar Chain output", new DeleteOutputAction()));
         }
     }
 
@@ -83,86 +150,234 @@ public class JarChain {
         if (taskChain.isEmpty()) {
             return;
         }
+        final boolean uncompressed = uncompressedIntermediates;
+        for (TaskProvider<? extends IJarOutputTask> task : intermediateTasks) {
+            if (task != getLastTask()) {
+                task.configure(t -> t.getUncompressedOutput().set(uncompressed));
+            }
+        }
         getLastTask().configure(lastTask -> { lastTask.doLast("Jar Chain finalizer", new FinalizerAction()); });
+        chainLength = taskChain.size();
         taskChain = Collections.emptyList(); // Don't persistently store full Task references
+        intermediateTasks = Collections.emptyList();
     }
 
-    private class FinalizerAction implements Action<Task> {
+    /**
+     * Skips the task's own actions if its output can be restored from the artifact store.
+     */
+    private class RestoreArtifactAction implements Action<Task> {
+
+        private final int chainIndex;
+        private final int stageIndex;
+
+        private RestoreArtifactAction(int chainIndex, int stageIndex) {
+            this.chainIndex = chainIndex;
+            this.stageIndex = stageIndex;
+        }
+
+        @Override
+        public void execute(Task task) {
+            final IJarOutputTask jarTask = (IJarOutputTask) task;
+            final String key = calculateArtifactKey(jarTask);
+            final File outputJar = jarTask.getOutputJar().get().getAsFile();
+            final RfgCacheService store = artifactStore.get();
+            if (!store.restoreArtifact(key, outputJar)) {
+                // Either become the producer of this artifact, or wait for a concurrent build to publish it
+                if (store.awaitOrClaimProduction(key, () -> store.hasArtifact(key), task.getPath())
+                        || !store.restoreArtifact(key, outputJar)) {
+                    return;
+                }
+            }
+            task.getLogger().lifecycle("Restored {} from the RFG artifact store ({})", outputJar.getName(), key);
+            // Later actions of this task are skipped along with the rest
+            saveStageDigest(stageIndex);
+            if (chainIndex == chainLength - 1) {
+                new FinalizerAction().execute(task);
+            }
+            throw new StopExecutionException();
+        }
+    }
+
+    /**
+     * Removes the previous output before the task writes a new one. It may be a read-only link into the artifact store
+     * left by an earlier build, even if the store has been disabled since, and the task must not write through it.
+     */
+    private static class DeleteOutputAction implements Action<Task> {
+
+        @Override
+        public void execute(Task task) {
+            final File outputJar = ((IJarOutputTask) task).getOutputJar().get().getAsFile();
+            try {
+                Files.deleteIfExists(outputJar.toPath());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private class PublishArtifactAction implements Action<Task> {
+
+        @Override
+        public void execute(Task task) {
+            final IJarOutputTask jarTask = (IJarOutputTask) task;
+            final File outputJar = jarTask.getOutputJar().get().getAsFile();
+            final String key = calculateArtifactKey(jarTask);
+            try {
+                if (outputJar.isFile()) {
+                    artifactStore.get().publishArtifact(key, outputJar);
+                }
+            } finally {
+                artifactStore.get().releaseProduction(key);
+            }
+        }
+    }
+
+    /**
+     * @return The artifact store key of the given task's output: a digest of the task type, whether its output is
+     *         compressed, its non-jar inputs and the contents of its input jar if it has one.
+     */
+    private static String calculateArtifactKey(IJarOutputTask task) {
+        final MessageDigest keyHasher = DigestUtils.getSha256Digest();
+        HashUtils.addToHash(BuildConfig.PLUGIN_VERSION).accept(keyHasher);
+        HashUtils.addToHash(task.getClass().getName()).accept(keyHasher);
+        // Stored apart so that the first project to publish doesn't decide the compression for all the others
+        HashUtils.addToHash(task.compressOutput() ? 1 : 0).accept(keyHasher);
+        task.hashInputs().accept(keyHasher);
+        if (task instanceof IJarTransformTask transformTask) {
+            HashUtils.addPropertyToHash(transformTask.getInputJar()).accept(keyHasher);
+        }
+        return Hex.encodeHexString(keyHasher.digest());
+    }
+
+    private class StageDigestAction implements Action<Task> {
+
+        private final int stageIndex;
+
+        private StageDigestAction(int stageIndex) {
+            this.stageIndex = stageIndex;
+        }
 
         @Override
         public void execute(Task ignored) {
-            saveUpToDateDigest();
+            saveStageDigest(stageIndex);
+        }
+    }
 
+    private class FinalizerAction implements Action<Task> {
+
+        @Override
+        public void execute(Task ignored) {
+            if (artifactStore != null || Constants.DEBUG_NO_TMP_CLEANUP) {
+                // Intermediate outputs are links into the artifact store, keeping them lets the chain resume from
+                // the first stage with changed inputs
+                return;
+            }
             for (int i = 0; i < taskChainOutputs.size() - 1; i++) {
                 File outJar = taskChainOutputs.get(i).get().getAsFile();
-                if (!Constants.DEBUG_NO_TMP_CLEANUP) {
-                    FileUtils.deleteQuietly(outJar);
-                }
+                FileUtils.deleteQuietly(outJar);
             }
         }
     }
 
+    private static File getDigestFile(RegularFileProperty output) {
+        return new File(output.getAsFile().get().getPath() + ".inputs.digest");
+    }
+
+    /**
+     * @return true if the final output exists and all the stages were last run with their current inputs
+     */
     public boolean isUpToDate() {
-        final long now = System.currentTimeMillis();
-        if (now - lastUpToDateCheck < 10_000) {
-            return wasUpToDate;
-        }
-        final File outputFileLocation = getLastTaskOutput().getAsFile().get();
-        if (!outputFileLocation.isFile()) {
+        if (!stageOutputs.getLast().getAsFile().get().isFile()) {
             return false;
         }
-        final File inputsKeyFile = new File(outputFileLocation.getPath() + ".inputs.sha256");
-        if (!inputsKeyFile.isFile()) {
-            return false;
+        final String[] digests = getStageDigests();
+        for (int i = 0; i < digests.length; i++) {
+            if (!digests[i].equals(readStageDigest(i))) {
+                return false;
+            }
         }
-        try {
-            final String savedInputsDigest = FileUtils.readFileToString(inputsKeyFile, StandardCharsets.UTF_8).trim();
-            final String hexDigest = calculateInputsDigest();
-
-            final boolean isUpToDate = savedInputsDigest.equals(hexDigest);
-            lastUpToDateCheck = System.currentTimeMillis();
-            wasUpToDate = isUpToDate;
+        return true;
+    }
 
-            if (HashUtils.DEBUG_LOG) {
-                System.err.println(
-                        "Up to date: " + isUpToDate + " ; file,current:\n" + savedInputsDigest + "\n" + hexDigest);
-            }
+    /**
+     * A stage is outdated if the chain isn't up to date, and its own output is missing or was produced from different
+     * inputs. This lets the chain resume from the first stage with changed inputs, as long as the intermediate outputs
+     * are still around.
+     */
+    private boolean isStageOutdated(int stageIndex) {
+        if (isUpToDate()) {
+            return false;
+        }
+        if (!stageOutputs.get(stageIndex).getAsFile().get().isFile()) {
+            return true;
+        }
+        final String savedDigest = readStageDigest(stageIndex);
+        final String currentDigest = getStageDigests()[stageIndex];
+        if (HashUtils.DEBUG_LOG) {
+            System.err.println("Stage " + stageIndex + " file,current:\n" + savedDigest + "\n" + currentDigest);
+        }
+        return !currentDigest.equals(savedDigest);
+    }
 
-            return isUpToDate;
+    private String readStageDigest(int stageIndex) {
+        final File digestFile = getDigestFile(stageOutputs.get(stageIndex));
+        if (!digestFile.isFile()) {
+            return null;
+        }
+        try {
+            return FileUtils.readFileToString(digestFile, StandardCharsets.UTF_8).trim();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void saveUpToDateDigest() {
-        wasUpToDate = true;
-        lastUpToDateCheck = System.currentTimeMillis();
-        final File outputFileLocation = getLastTaskOutput().getAsFile().get();
-        if (!outputFileLocation.isFile()) {
+    private void saveStageDigest(int stageIndex) {
+        final RegularFileProperty output = stageOutputs.get(stageIndex);
+        if (!output.getAsFile().get().isFile()) {
             return;
         }
-        final File inputsKeyFile = new File(outputFileLocation.getPath() + ".inputs.sha256");
-        final String hexDigest = calculateInputsDigest();
+        final String hexDigest = getStageDigests()[stageIndex];
         try {
-            FileUtils.writeStringToFile(inputsKeyFile, hexDigest + System.lineSeparator(), StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(
+                    getDigestFile(output),
+                    hexDigest + System.lineSeparator(),
+                    StandardCharsets.UTF_8);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String calculateInputsDigest() {
+    private String[] getStageDigests() {
+        final long now = System.currentTimeMillis();
+        if (stageDigests == null || now - lastDigestCalculation >= 10_000) {
+            stageDigests = calculateStageDigests();
+            lastDigestCalculation = System.currentTimeMillis();
+        }
+        return stageDigests;
+    }
+
+    /**
+     * @return For each stage, a digest of its inputs chained with the digest of the previous stage, so that a change
+     *         invalidates the stage it affects and all the following ones.
+     */
+    private String[] calculateStageDigests() {
         if (HashUtils.DEBUG_LOG) {
-            System.err.println("*** Recalculating inputs digest");
+            System.err.println("*** Recalculating stage digests");
             new Throwable().printStackTrace(System.err);
         }
-        final MessageDigest inputsHasher = DigestUtils.getSha256Digest();
-        for (MessageDigestConsumer t : taskChainHashers) {
-            if (HashUtils.DEBUG_LOG) {
-                System.err.println(" * task hash");
+        final String[] digests = new String[taskChainHashers.size()];
+        byte[] previousDigest = new byte[0];
+        for (int i = 0; i < digests.length; i++) {
+            final MessageDigest stageHasher = fingerprint.newDigest();
+            stageHasher.update(previousDigest);
+            if (i == 0 && chainInputHasher != null) {
+                chainInputHasher.accept(stageHasher);
             }
-            t.accept(inputsHasher);
+            taskChainHashers.get(i).accept(stageHasher);
+            previousDigest = stageHasher.digest();
+            // Prefixed with the algorithm so that switching it invalidates the saved digests
+            digests[i] = stageHasher.getAlgorithm() + ":" + Hex.encodeHexString(previousDigest);
         }
-        final byte[] digest = inputsHasher.digest();
-        return Hex.encodeHexString(digest).trim();
+        return digests;
     }
 }
@@ -0,0 +1,271 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.collect.Iterators;
+import com.gtnewhorizons.retrofuturagradle.Constants;
+
+/**
+ * A source jar held in memory by the source transformation tasks. The java sources are decoded up front since every
+ * stage rewrites them, all the other entries stay in the backing jar: they are only inflated when read, and copied to
+ * the saved jar still compressed unless they were replaced.
+ */
+public final class MemoryJar implements Closeable {
+
+    private final ZipFile zipFile;
+    private Map<String, String> sources;
+    private final ResourceMap resources = new ResourceMap();
+
+    private MemoryJar(ZipFile zipFile, Map<String, String> sources) {
+        this.zipFile = zipFile;
+        this.sources = sources;
+    }
+
+    /**
+     * @return Non-java file contents, read from the backing jar on demand. Replacing or removing an entry doesn't read
+     *         it, so {@code put} and {@code remove} return null for entries that weren't replaced before.
+     */
+    public Map<String, byte[]> getResources() {
+        return resources;
+    }
+
+    /**
+     * @return Java file contents
+     */
+    public Map<String, String> getSources() {
+        return sources;
+    }
+
+    /**
+     * @param sources The new java file contents, replacing the current ones
+     */
+    public void setSources(Map<String, String> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * The sources of a jar written by {@link #save(File, boolean)}.
+     *
+     * @param size   The size of the written jar, to quickly reject modified files
+     * @param digest The Murmur3 digest of the written jar
+     */
+    private record SavedSources(Map<String, String> sources, long size, byte[] digest) {}
+
+    private static final int MAX_SAVED_JARS = 2;
+
+    /**
+     * The decoded sources of the last few jars saved, so that the next task of a chain running in this JVM can take
+     * them over instead of decoding the jar it was just given. Soft references let them be dropped under memory
+     * pressure.
+     */
+    private static final Map<File, SoftReference<SavedSources>> savedJars = Collections
+            .synchronizedMap(new LinkedHashMap<>() {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<File, SoftReference<SavedSources>> eldest) {
+                    return size() > MAX_SAVED_JARS;
+                }
+            });
+
+    /**
+     * @return The sources of the jar as they were saved by a previous task in this JVM, if the jar wasn't modified
+     *         since
+     */
+    private static Map<String, String> takeSavedSources(File jar) {
+        final SoftReference<SavedSources> ref = savedJars.remove(jar.getAbsoluteFile());
+        final SavedSources saved = (ref == null) ? null : ref.get();
+        if (saved == null || jar.length() != saved.size()) {
+            return null;
+        }
+        return Arrays.equals(HashUtils.getFileDigest(jar, HashUtils.Fingerprint.MURMUR3_128), saved.digest())
+                ? saved.sources()
+                : null;
+    }
+
+    /**
+     * Opens a JAR file, the returned jar has to be closed after it was saved.
+     *
+     * @param jar The JAR to load
+     * @return The loaded jar
+     * @throws IOException Forwarded IO errors from the JAR reading process
+     */
+    public static MemoryJar load(File jar) throws IOException {
+        final ZipFile zipFile = ZipFile.builder().setFile(jar).get();
+        try {
+            // Written by the previous task of the chain, skip decoding it again
+            final Map<String, String> savedSources = takeSavedSources(jar);
+            final MemoryJar memoryJar = new MemoryJar(
+                    zipFile,
+                    (savedSources != null) ? savedSources : new HashMap<>());
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+                final String name = entry.getName();
+                if (name.contains("META-INF")) {
+                    continue;
+                }
+                if (entry.isDirectory() || !name.endsWith(".java")) {
+                    memoryJar.resources.untouched.put(name, entry);
+                } else if (savedSources == null) {
+                    try (final InputStream is = zipFile.getInputStream(entry)) {
+                        memoryJar.sources.put(name, SourceText.decode(IOUtils.toByteArray(is)));
+                    }
+                }
+            }
+            return memoryJar;
+        } catch (IOException | RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the current contents into a new JAR file, untouched resources are copied without recompressing them and
+     * the others are compressed in parallel.
+     *
+     * @param target      The file to write
+     * @param isTemporary Whether this is a debugging snapshot that is skipped unless temporary files are kept
+     * @return The written file, or null if it was skipped
+     * @throws IOException Forwarded IO errors from the JAR writing process
+     */
+    public File save(File target, boolean isTemporary) throws IOException {
+        return save(target, isTemporary, true);
+    }
+
+    /**
+     * @param compress Whether to deflate the replaced resources and the sources, or to store them uncompressed
+     * @see #save(File, boolean)
+     */
+    public File save(File target, boolean isTemporary, boolean compress) throws IOException {
+        if (isTemporary && !Constants.DEBUG_NO_TMP_CLEANUP) {
+            return null;
+        }
+        final MessageDigest jarDigest = HashUtils.Fingerprint.MURMUR3_128.newDigest();
+        try (FileOutputStream fos = new FileOutputStream(target);
+                DigestOutputStream dos = new DigestOutputStream(fos, jarDigest);
+                BufferedOutputStream bos = new BufferedOutputStream(dos);
+                ParallelJarWriter writer = new ParallelJarWriter(bos, compress)) {
+            for (ZipArchiveEntry entry : resources.untouched.values()) {
+                writer.addRawEntry(zipFile, entry);
+            }
+            for (Map.Entry<String, byte[]> resource : resources.replaced.entrySet()) {
+                writer.addEntry(resource.getKey(), resource.getValue());
+            }
+            for (Map.Entry<String, String> srcFile : sources.entrySet()) {
+                writer.addEntry(srcFile.getKey(), srcFile.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (!isTemporary) {
+            savedJars.put(
+                    target.getAbsoluteFile(),
+                    new SoftReference<>(new SavedSources(sources, target.length(), jarDigest.digest())));
+        }
+        return target;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    private byte[] readEntry(ZipArchiveEntry entry) {
+        try (final InputStream is = zipFile.getInputStream(entry)) {
+            return IOUtils.toByteArray(is);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Resources that weren't replaced are only kept as references to their entries in the backing jar.
+     */
+    private final class ResourceMap extends AbstractMap<String, byte[]> {
+
+        private final Map<String, ZipArchiveEntry> untouched = new LinkedHashMap<>();
+        private final Map<String, byte[]> replaced = new LinkedHashMap<>();
+
+        @Override
+        public int size() {
+            return untouched.size() + replaced.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return replaced.containsKey(key) || untouched.containsKey(key);
+        }
+
+        @Override
+        public byte[] get(Object key) {
+            final byte[] data = replaced.get(key);
+            if (data != null) {
+                return data;
+            }
+            final ZipArchiveEntry entry = untouched.get(key);
+            return (entry == null) ? null : readEntry(entry);
+        }
+
+        /**
+         * @return The previous contents if they were replaced before, null if they were still in the backing jar
+         */
+        @Override
+        public byte[] put(String key, byte[] value) {
+            untouched.remove(key);
+            return replaced.put(key, value);
+        }
+
+        /**
+         * @return The previous contents if they were replaced before, null if they were still in the backing jar
+         */
+        @Override
+        public byte[] remove(Object key) {
+            untouched.remove(key);
+            return replaced.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            untouched.clear();
+            replaced.clear();
+        }
+
+        @Override
+        public Set<Entry<String, byte[]>> entrySet() {
+            return new AbstractSet<>() {
+
+                @Override
+                public int size() {
+                    return ResourceMap.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, byte[]>> iterator() {
+                    return Iterators.concat(
+                            replaced.entrySet().iterator(),
+                            Iterators.transform(
+                                    untouched.values().iterator(),
+                                    entry -> Map.entry(entry.getName(), readEntry(entry))));
+                }
+            };
+        }
+    }
+}
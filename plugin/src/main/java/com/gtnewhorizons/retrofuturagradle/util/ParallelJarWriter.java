@@ -0,0 +1,202 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a jar, deflating the entries in parallel like commons-compress' ParallelScatterZipCreator, but keeping them
+ * in the order they were added so that the output is deterministic. Jars only read by the next task of a chain can be
+ * written without compression instead.
+ */
+public final class ParallelJarWriter implements Closeable {
+
+    private static final ForkJoinPool COMPRESSION_POOL = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()));
+    /**
+     * How many compressed entries can wait for the previous ones to be written, bounds the memory used by the writer.
+     */
+    private static final int MAX_QUEUED_ENTRIES = 1024;
+
+    /**
+     * An entry ready to be copied raw to the jar, the entry has its method, sizes and CRC set.
+     */
+    private record CompressedEntry(ZipArchiveEntry entry, byte[] rawData) {}
+
+    private final ZipArchiveOutputStream zos;
+    private final boolean compress;
+    private final Deque<Future<CompressedEntry>> queuedEntries = new ArrayDeque<>();
+
+    /**
+     * @param output The stream to write the jar to, closed along with the writer
+     */
+    public ParallelJarWriter(OutputStream output) {
+        this(output, true);
+    }
+
+    /**
+     * @param output   The stream to write the jar to, closed along with the writer
+     * @param compress Whether to deflate added entries, or to store them as-is
+     */
+    public ParallelJarWriter(OutputStream output, boolean compress) {
+        this.zos = new ZipArchiveOutputStream(output);
+        this.compress = compress;
+    }
+
+    /**
+     * Adds an empty directory entry, the name has to end with a slash.
+     */
+    public void addDirectory(String name) throws IOException {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(0);
+        entry.setCompressedSize(0);
+        entry.setCrc(0);
+        enqueue(CompletableFuture.completedFuture(new CompressedEntry(entry, new byte[0])));
+    }
+
+    /**
+     * Adds a file entry with the current time as its modification time.
+     */
+    public void addEntry(String name, byte[] data) throws IOException {
+        addEntry(name, -1, data);
+    }
+
+    /**
+     * Adds a file entry, its contents are deflated on a background thread unless compression is disabled.
+     *
+     * @param time The modification time of the entry in milliseconds, or -1 for the current time
+     */
+    public void addEntry(String name, long time, byte[] data) throws IOException {
+        enqueue(COMPRESSION_POOL.submit(() -> compress ? compress(name, time, data) : store(name, time, data)));
+    }
+
+    /**
+     * Adds a file entry whose contents are produced on a background thread, like a class that needs transforming, then
+     * deflated there too unless compression is disabled.
+     *
+     * @param time The modification time of the entry in milliseconds, or -1 for the current time
+     * @param data Produces the contents of the entry
+     */
+    public void addComputedEntry(String name, long time, Callable<byte[]> data) throws IOException {
+        // Not ForkJoinPool.submit, which wraps checked exceptions of a Callable in RuntimeException on some JDKs
+        enqueue(CompletableFuture.supplyAsync(() -> {
+            final byte[] bytes;
+            try {
+                bytes = data.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            return compress ? compress(name, time, bytes) : store(name, time, bytes);
+        }, COMPRESSION_POOL));
+    }
+
+    /**
+     * Copies an entry from another zip without decompressing it.
+     */
+    public void addRawEntry(ZipFile source, ZipArchiveEntry entry) throws IOException {
+        final byte[] rawData;
+        try (final InputStream raw = source.getRawInputStream(entry)) {
+            rawData = IOUtils.toByteArray(raw);
+        }
+        enqueue(CompletableFuture.completedFuture(new CompressedEntry(entry, rawData)));
+    }
+
+    private void enqueue(Future<CompressedEntry> entry) throws IOException {
+        queuedEntries.addLast(entry);
+        // Write out whatever is already compressed, only block once too many entries are waiting
+        while (!queuedEntries.isEmpty()
+                && (queuedEntries.size() > MAX_QUEUED_ENTRIES || queuedEntries.getFirst().isDone())) {
+            writeNextEntry();
+        }
+    }
+
+    private void writeNextEntry() throws IOException {
+        final CompressedEntry compressed;
+        try {
+            compressed = queuedEntries.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing jar entries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(e.getCause());
+        }
+        zos.addRawArchiveEntry(compressed.entry(), new ByteArrayInputStream(compressed.rawData()));
+    }
+
+    private static ZipArchiveEntry newEntry(String name, long time, byte[] data) {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        if (time != -1) {
+            entry.setTime(time);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        entry.setSize(data.length);
+        return entry;
+    }
+
+    private static CompressedEntry store(String name, long time, byte[] data) {
+        final ZipArchiveEntry entry = newEntry(name, time, data);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setCompressedSize(data.length);
+        return new CompressedEntry(entry, data);
+    }
+
+    private static CompressedEntry compress(String name, long time, byte[] data) {
+        final ZipArchiveEntry entry = newEntry(name, time, data);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        // Raw deflate without the zlib wrapper, as stored in zips
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                final int written = deflater.deflate(buffer);
+                compressed.write(buffer, 0, written);
+            }
+        } finally {
+            deflater.end();
+        }
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setCompressedSize(compressed.size());
+        return new CompressedEntry(entry, compressed.toByteArray());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!queuedEntries.isEmpty()) {
+                writeNextEntry();
+            }
+        } finally {
+            queuedEntries.forEach(entry -> entry.cancel(false));
+            zos.close();
+        }
+    }
+}
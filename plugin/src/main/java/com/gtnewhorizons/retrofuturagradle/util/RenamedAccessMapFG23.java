@@ -1,6 +1,6 @@
 package com.gtnewhorizons.retrofuturagradle.util;
 
-import java.util.Map;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -8,11 +8,11 @@ import com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.Acc
 
 public class RenamedAccessMapFG23 extends AccessMap {
 
-    private final Map<String, String> symbolRenameMap;
+    private final Function<String, String> symbolRenamer;
     private int renameCount = 0;
 
-    public RenamedAccessMapFG23(Map<String, String> symbolRenameMap) {
-        this.symbolRenameMap = symbolRenameMap;
+    public RenamedAccessMapFG23(Function<String, String> symbolRenamer) {
+        this.symbolRenamer = symbolRenamer;
     }
 
     @Override
@@ -30,7 +30,7 @@ public class RenamedAccessMapFG23 extends AccessMap {
                 end = parts[1].substring(parenIndex);
             }
 
-            String renamed = symbolRenameMap.get(start);
+            String renamed = symbolRenamer.apply(start);
             if (renamed != null) {
                 parts[1] = renamed + end;
                 renameCount++;
@@ -9,9 +9,13 @@ import org.objectweb.asm.commons.Remapper;
  */
 public class SimpleSrgRemapper extends Remapper {
 
-    private final Map<String, String> mapping;
+    private final SrgNameTable mapping;
 
     public SimpleSrgRemapper(final Map<String, String> mapping) {
+        this(SrgNameTable.of(mapping));
+    }
+
+    public SimpleSrgRemapper(final SrgNameTable mapping) {
         this.mapping = mapping;
     }
 
@@ -0,0 +1,76 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversions between the stored, whole-file and per-line forms of java sources shared by the source transformation
+ * stages. Sources are kept as plain strings, which the JVM already stores as one byte per character for the
+ * Latin-1 text decompiled sources consist of, so these only avoid the extra copies of readers, regex splitting and
+ * joining.
+ */
+public final class SourceText {
+
+    private SourceText() {}
+
+    /**
+     * @param utf8 The UTF-8 encoded contents of a source file
+     * @return The decoded source, copied once instead of through the char buffers of a reader
+     */
+    public static String decode(byte[] utf8) {
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits a source on \r\n, \r and \n line endings, with the same result as
+     * {@code text.split("\r\n|\r|\n")}: trailing empty lines are dropped.
+     *
+     * @return A new mutable list of the lines
+     */
+    public static List<String> splitLines(String text) {
+        final int length = text.length();
+        final ArrayList<String> lines = new ArrayList<>(length / 32 + 1);
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                lines.add(text.substring(lineStart, i));
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lines.isEmpty()) {
+            // No line endings at all, even an empty text is a single line
+            lines.add(text);
+            return lines;
+        }
+        lines.add(text.substring(lineStart));
+        int size = lines.size();
+        while (size > 0 && lines.get(size - 1).isEmpty()) {
+            lines.remove(--size);
+        }
+        return lines;
+    }
+
+    /**
+     * @return The lines joined with the system line separator, into a builder of the exact final size
+     */
+    public static String joinLines(List<String> lines) {
+        final String separator = System.lineSeparator();
+        int length = Math.max(0, lines.size() - 1) * separator.length();
+        for (String line : lines) {
+            length += line.length();
+        }
+        final StringBuilder joined = new StringBuilder(length);
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                joined.append(separator);
+            }
+            joined.append(lines.get(i));
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only SRG name to MCP name table keyed by the numeric id SRG names carry (func_71410_x, field_1_p,
+ * p_71410_1_, p_i1234_1_). The id and the rest of the name are packed into a long, so lookups parse the name straight
+ * out of the text being remapped instead of hashing a substring of it, and reject anything that isn't an SRG name
+ * (like the class names ASM asks about) by its first characters. The SRG name strings themselves aren't kept.
+ */
+public final class SrgNameTable {
+
+    private static final int KIND_METHOD = 0;
+    private static final int KIND_FIELD = 1;
+    private static final int KIND_PARAM = 2;
+    private static final int KIND_CTOR_PARAM = 3;
+    /** Ids are packed into 30 bits, names with longer ones fall back to the hash map. */
+    private static final int MAX_ID_DIGITS = 9;
+    private static final int MAX_PARAM_INDEX_DIGITS = 3;
+    /** Method and field suffixes (the _x of func_71410_x) are packed as up to 4 6-bit characters. */
+    private static final int MAX_SUFFIX_LENGTH = 4;
+
+    /** Open addressing with linear probing, 0 marks an empty slot. */
+    private final long[] keys;
+    private final String[] values;
+    private final int mask;
+    /** Names that can't be packed into a key. */
+    private final Map<String, String> fallback = new HashMap<>();
+
+    private SrgNameTable(int expectedSize) {
+        // Keep the load factor at most 0.75
+        final int capacity = Integer.highestOneBit(Math.max(4, expectedSize + expectedSize / 3) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param mappings SRG name to MCP name mappings
+     * @return A table with the same mappings
+     */
+    public static SrgNameTable of(Map<String, String> mappings) {
+        final SrgNameTable table = new SrgNameTable(mappings.size());
+        for (Map.Entry<String, String> mapping : mappings.entrySet()) {
+            table.put(mapping.getKey(), mapping.getValue());
+        }
+        return table;
+    }
+
+    public int size() {
+        int size = fallback.size();
+        for (long key : keys) {
+            if (key != 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The mapped name of the SRG name in {@code text} from {@code start} (inclusive) to {@code end}
+     *         (exclusive), or null if it isn't mapped
+     */
+    public String get(CharSequence text, int start, int end) {
+        final long key = packKey(text, start, end);
+        if (key == 0) {
+            return fallback.isEmpty() ? null : fallback.get(text.subSequence(start, end).toString());
+        }
+        for (int slot = slotOf(key);; slot = (slot + 1) & mask) {
+            final long slotKey = keys[slot];
+            if (slotKey == key) {
+                return values[slot];
+            } else if (slotKey == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return The mapped name of an SRG name, or null if it isn't mapped
+     */
+    public String get(String name) {
+        return get(name, 0, name.length());
+    }
+
+    private void put(String name, String value) {
+        final long key = packKey(name, 0, name.length());
+        if (key == 0) {
+            fallback.put(name, value);
+            return;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Packs the whole name into a unique non-zero key: the kind in the low 2 bits, then the number of digits of the id
+     * (so that leading zeros are kept apart) and the id itself, then the suffix characters or the parameter index.
+     *
+     * @return The key, or 0 if the text isn't an SRG name that fits in one
+     */
+    private static long packKey(CharSequence text, int start, int end) {
+        if (end - start < 4) {
+            return 0;
+        }
+        final int kind;
+        int i;
+        if (startsWith(text, start, end, "func_")) {
+            kind = KIND_METHOD;
+            i = start + 5;
+        } else if (startsWith(text, start, end, "field_")) {
+            kind = KIND_FIELD;
+            i = start + 6;
+        } else if (startsWith(text, start, end, "p_")) {
+            i = start + 2;
+            if (text.charAt(i) == 'i') {
+                kind = KIND_CTOR_PARAM;
+                i++;
+            } else {
+                kind = KIND_PARAM;
+            }
+        } else {
+            return 0;
+        }
+        final int idStart = i;
+        long id = 0;
+        while (i < end && i - idStart < MAX_ID_DIGITS && isDigit(text.charAt(i))) {
+            id = id * 10 + (text.charAt(i) - '0');
+            i++;
+        }
+        if (i == idStart || i == end || text.charAt(i) != '_') {
+            return 0;
+        }
+        long key = (((long) (i - idStart) << 30 | id) << 2) | kind;
+        i++;
+        if (kind == KIND_METHOD || kind == KIND_FIELD) {
+            // _x or longer suffix up to the end
+            if (i == end || end - i > MAX_SUFFIX_LENGTH) {
+                return 0;
+            }
+            for (int shift = 36; i < end; i++, shift += 6) {
+                final int code = suffixCode(text.charAt(i));
+                if (code == 0) {
+                    return 0;
+                }
+                key |= (long) code << shift;
+            }
+            return key;
+        }
+        // _<index>_ up to the end
+        final int indexStart = i;
+        int index = 0;
+        while (i < end && i - indexStart < MAX_PARAM_INDEX_DIGITS && isDigit(text.charAt(i))) {
+            index = index * 10 + (text.charAt(i) - '0');
+            i++;
+        }
+        if (i == indexStart || i != end - 1 || text.charAt(i) != '_') {
+            return 0;
+        }
+        return key | (long) (i - indexStart) << 36 | (long) index << 38;
+    }
+
+    /**
+     * @return A 6-bit code in 1..53 for suffix characters, or 0 for anything else
+     */
+    private static int suffixCode(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return 1 + (c - 'a');
+        } else if (c >= 'A' && c <= 'Z') {
+            return 27 + (c - 'A');
+        } else if (c == '_') {
+            return 53;
+        }
+        return 0;
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
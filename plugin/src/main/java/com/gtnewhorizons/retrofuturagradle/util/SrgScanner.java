@@ -0,0 +1,172 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+/**
+ * Finds SRG-style names (func_123_g/field_1_p/p_123_1_) in source lines with a single forward scan. Finds the same
+ * names as the {@code (func_\d+_[a-zA-Z_]+|field_\d+_[a-zA-Z_]+|p_\w+_\d+_)([^\w$]|$)} regex, including names
+ * starting in the middle of an identifier.
+ */
+public final class SrgScanner {
+
+    private SrgScanner() {}
+
+    /**
+     * Maps the name found in a line, given as a range so that names can be looked up without copying them out.
+     */
+    @FunctionalInterface
+    public interface NameMapper {
+
+        /**
+         * @return The replacement of the SRG name from {@code start} (inclusive) to {@code end} (exclusive), or null
+         *         to keep it
+         */
+        String map(String line, int start, int end);
+    }
+
+    /**
+     * @param line The text to search
+     * @param from The index to start searching at
+     * @return The start index of the first SRG name at or after {@code from}, or -1 if there is none, the end of the
+     *         name is given by {@link #nameEnd(CharSequence, int)}
+     */
+    public static int find(CharSequence line, int from) {
+        final int length = line.length();
+        for (int i = from; i < length; i++) {
+            final char c = line.charAt(i);
+            if ((c == 'f' || c == 'p') && nameEnd(line, i) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param line  The text to search
+     * @param start The index the name would start at
+     * @return The index just past the SRG name starting at {@code start}, or -1 if there is no name there
+     */
+    public static int nameEnd(CharSequence line, int start) {
+        if (startsWith(line, start, "func_")) {
+            return memberNameEnd(line, start + 5);
+        } else if (startsWith(line, start, "field_")) {
+            return memberNameEnd(line, start + 6);
+        } else if (startsWith(line, start, "p_")) {
+            return paramNameEnd(line, start + 2);
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces all the SRG names in a line.
+     *
+     * @param line   The line to remap
+     * @param buffer A reusable builder for the remapped line, cleared before use
+     * @param mapper Gives the replacement of an SRG name, or null to keep it
+     * @return The remapped line, or the same line instance if nothing was replaced
+     */
+    public static String remapLine(String line, StringBuilder buffer, NameMapper mapper) {
+        final int length = line.length();
+        int copiedUpTo = 0;
+        int i = 0;
+        while (i < length) {
+            final char c = line.charAt(i);
+            final int end = (c == 'f' || c == 'p') ? nameEnd(line, i) : -1;
+            if (end == -1) {
+                i++;
+                continue;
+            }
+            final String mapped = mapper.map(line, i, end);
+            if (mapped != null) {
+                if (copiedUpTo == 0) {
+                    buffer.setLength(0);
+                }
+                buffer.append(line, copiedUpTo, i).append(mapped);
+                copiedUpTo = end;
+            }
+            i = end;
+        }
+        if (copiedUpTo == 0) {
+            return line;
+        }
+        return buffer.append(line, copiedUpTo, length).toString();
+    }
+
+    private static boolean startsWith(CharSequence line, int start, String prefix) {
+        if (start + prefix.length() > line.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    /**
+     * A name can't be directly followed by another identifier character, non-ASCII letters don't count like in the
+     * regex.
+     */
+    private static boolean isTerminator(CharSequence line, int index) {
+        if (index == line.length()) {
+            return true;
+        }
+        final char c = line.charAt(index);
+        return !isWordChar(c) && c != '$';
+    }
+
+    /**
+     * Matches the {@code \d+_[a-zA-Z_]+} part of method and field names.
+     */
+    private static int memberNameEnd(CharSequence line, int start) {
+        final int length = line.length();
+        int i = start;
+        while (i < length && isDigit(line.charAt(i))) {
+            i++;
+        }
+        if (i == start || i == length || line.charAt(i) != '_') {
+            return -1;
+        }
+        final int suffixStart = ++i;
+        while (i < length && (isLetter(line.charAt(i)) || line.charAt(i) == '_')) {
+            i++;
+        }
+        return (i > suffixStart && isTerminator(line, i)) ? i : -1;
+    }
+
+    /**
+     * Matches the {@code \w+_\d+_} part of parameter names. The name has to span the whole identifier since it must
+     * be followed by a non-word character, so it is enough to check how that identifier ends.
+     */
+    private static int paramNameEnd(CharSequence line, int start) {
+        final int length = line.length();
+        int end = start;
+        while (end < length && isWordChar(line.charAt(end))) {
+            end++;
+        }
+        if (!isTerminator(line, end) || end - start < 4 || line.charAt(end - 1) != '_') {
+            return -1;
+        }
+        int digitsStart = end - 1;
+        while (digitsStart > start && isDigit(line.charAt(digitsStart - 1))) {
+            digitsStart--;
+        }
+        // At least one digit, preceded by an underscore that is itself preceded by at least one character
+        final int separator = digitsStart - 1;
+        if (digitsStart == end - 1 || separator <= start || line.charAt(separator) != '_') {
+            return -1;
+        }
+        return end;
+    }
+}
@@ -3,9 +3,7 @@ package com.gtnewhorizons.retrofuturagradle.util;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -17,7 +15,9 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -27,12 +27,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nullable;
 
@@ -43,6 +44,7 @@ import net.fabricmc.mappingio.tree.VisitableMappingTree;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -57,9 +59,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.tree.ClassNode;
 
-import com.google.common.base.Joiner;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.MultimapBuilder;
+import com.google.common.base.Suppliers;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -67,6 +67,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.gtnewhorizons.retrofuturagradle.Constants;
 import com.gtnewhorizons.retrofuturagradle.mcp.RemapSourceJarTask;
+import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
 import com.gtnewhorizons.retrofuturagradle.util.patching.ContextualPatch;
 import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
@@ -121,6 +122,73 @@ public final class Utilities {
         return FileUtils.getFile(getCacheRoot(project), paths);
     }
 
+    /**
+     * Marks a file that must never be modified in place (e.g. a published cache entry) as read-only, which allows
+     * {@link #linkOrCopyFile(File, File)} to hard link it. Does nothing on Windows, where read-only files can't be
+     * deleted.
+     */
+    public static void markImmutable(File file) {
+        if (!SystemUtils.IS_OS_WINDOWS) {
+            file.setWritable(false, false);
+        }
+    }
+
+    /**
+     * Makes the contents of a file available at the target path as cheaply as possible. Read-only files (see
+     * {@link #markImmutable(File)}) are hard linked, so the target takes no extra space and can't be written through;
+     * other files are copied, which clones the file's blocks instead of duplicating them on copy-on-write file systems
+     * where the JDK supports it. Any existing target file is replaced.
+     *
+     * @param source The file to materialize
+     * @param target Where to make it available
+     */
+    public static void linkOrCopyFile(File source, File target) throws IOException {
+        if (!tryLinkFile(source, target)) {
+            FileUtils.forceMkdirParent(target);
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the target with a hard link to the source if the source is read-only (see
+     * {@link #markImmutable(File)}) and both are on the same file system.
+     *
+     * @param source The file to link to
+     * @param target Where to put the link, any existing file is replaced
+     * @return true if the link was created, false if the target was left untouched
+     */
+    public static boolean tryLinkFile(File source, File target) throws IOException {
+        final Path sourcePath = source.toPath();
+        if (SystemUtils.IS_OS_WINDOWS || isOwnerWritable(sourcePath)) {
+            return false;
+        }
+        FileUtils.forceMkdirParent(target);
+        final Path targetPath = target.toPath();
+        final Path tempPath = targetPath.resolveSibling(target.getName() + ".rfg-link.tmp");
+        try {
+            Files.deleteIfExists(tempPath);
+            Files.createLink(tempPath, sourcePath);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Most likely on different file systems
+            LOGGER.debug("Could not link {} to {}", targetPath, sourcePath, e);
+            return false;
+        }
+        Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Checks the owner write permission bit instead of asking the OS whether the current user may write, because root
+     * can write to any file regardless of its mode.
+     */
+    private static boolean isOwnerWritable(Path path) throws IOException {
+        try {
+            return Files.getPosixFilePermissions(path).contains(PosixFilePermission.OWNER_WRITE);
+        } catch (UnsupportedOperationException e) {
+            return Files.isWritable(path);
+        }
+    }
+
     public static String getMapStringOrBlank(Map<?, ?> map, String key) {
         Object value = map.get(key);
         return value == null ? "" : value.toString();
@@ -184,6 +252,13 @@ public final class Utilities {
         }
     }
 
+    public static byte[] readZipEntry(org.apache.commons.compress.archivers.zip.ZipFile jar, ZipArchiveEntry entry)
+            throws IOException {
+        try (InputStream zis = jar.getInputStream(entry)) {
+            return IOUtils.toByteArray(zis);
+        }
+    }
+
     public static byte[] getClassBytes(Class<?> klass) {
         final String resourcePath = String.format("/%s.class", klass.getName().replace('.', '/'));
         try (InputStream cis = klass.getResourceAsStream(resourcePath)) {
@@ -225,56 +300,6 @@ public final class Utilities {
         }
     }
 
-    /**
-     * Load a JAR file into in-memory hashmaps
-     * 
-     * @param jar             The JAR to load
-     * @param loadedResources The map to populate with non-java file contents
-     * @param loadedSources   The map to populate with java file contents
-     * @throws IOException Forwarded IO errors from the JAR reading process
-     */
-    public static void loadMemoryJar(File jar, Map<String, byte[]> loadedResources, Map<String, String> loadedSources)
-            throws IOException {
-        try (final FileInputStream fis = new FileInputStream(jar);
-                final BufferedInputStream bis = new BufferedInputStream(fis);
-                final ZipInputStream zis = new ZipInputStream(bis)) {
-            ZipEntry entry = null;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (entry.getName().contains("META-INF")) {
-                    continue;
-                }
-                if (entry.isDirectory() || !entry.getName().endsWith(".java")) {
-                    loadedResources.put(entry.getName(), IOUtils.toByteArray(zis));
-                } else {
-                    final String src = IOUtils.toString(zis, StandardCharsets.UTF_8);
-                    loadedSources.put(entry.getName(), src);
-                }
-            }
-        }
-    }
-
-    public static File saveMemoryJar(Map<String, byte[]> loadedResources, Map<String, String> loadedSources,
-            File target, boolean isTemporary) throws IOException {
-        if (isTemporary && !Constants.DEBUG_NO_TMP_CLEANUP) {
-            return null;
-        }
-        try (FileOutputStream fos = new FileOutputStream(target);
-                BufferedOutputStream bos = new BufferedOutputStream(fos);
-                ZipOutputStream zos = new ZipOutputStream(bos)) {
-            for (Map.Entry<String, byte[]> resource : loadedResources.entrySet()) {
-                zos.putNextEntry(new ZipEntry(resource.getKey()));
-                zos.write(resource.getValue());
-                zos.closeEntry();
-            }
-            for (Map.Entry<String, String> srcFile : loadedSources.entrySet()) {
-                zos.putNextEntry(new ZipEntry(srcFile.getKey()));
-                zos.write(srcFile.getValue().getBytes(StandardCharsets.UTF_8));
-                zos.closeEntry();
-            }
-        }
-        return target;
-    }
-
     public static void decompressArchive(final ArchiveInputStream<?> stream, final Path destination)
             throws IOException {
         ArchiveEntry entry = null;
@@ -354,9 +379,9 @@ public final class Utilities {
         public List<String> getData(String target) {
             target = strip(target);
 
-            if (fileMap.containsKey(target)) {
-                String[] lines = fileMap.get(target).split("\r\n|\r|\n");
-                return new ArrayList<>(Arrays.asList(lines));
+            final String source = fileMap.get(target);
+            if (source != null) {
+                return SourceText.splitLines(source);
             }
 
             return null;
@@ -364,7 +389,7 @@ public final class Utilities {
 
         @Override
         public void setData(String target, List<String> data) {
-            fileMap.put(strip(target), Joiner.on(System.lineSeparator()).join(data));
+            fileMap.put(strip(target), SourceText.joinLines(data));
         }
     }
 
@@ -386,13 +411,21 @@ public final class Utilities {
         public final String param;
         public final String suffix;
         public final String type;
-        public int uses = 0;
+        /**
+         * The type without its package, a line has to contain it for the mapping to apply.
+         */
+        public final String simpleTypeName;
+        /**
+         * How many times this mapping was applied, sources are remapped in parallel.
+         */
+        public final AtomicInteger uses = new AtomicInteger();
 
         public GenericMapping(String zipEntry, String param, String suffix, String type) {
             this.zipEntry = zipEntry;
             this.param = Objects.requireNonNull(param);
             this.suffix = Objects.requireNonNull(suffix);
             this.type = type;
+            this.simpleTypeName = (type == null) ? null : type.substring(type.lastIndexOf('.') + 1);
         }
 
         @Override
@@ -417,15 +450,77 @@ public final class Utilities {
 
     public static class MappingsSet {
 
-        public final Map<String, Utilities.Mapping> methodMappings = new HashMap<>();
-        public final Map<String, Utilities.Mapping> fieldMappings = new HashMap<>();
-        public final Map<String, String> paramMappings = new HashMap<>();
-        // srg name -> mapping
-        public final ListMultimap<String, GenericMapping> genericMappings = MultimapBuilder.hashKeys().arrayListValues()
-                .build();
+        public final Map<String, Utilities.Mapping> methodMappings;
+        public final Map<String, Utilities.Mapping> fieldMappings;
+        public final Map<String, String> paramMappings;
+        // zip entry -> srg name or @init:constructor signature -> mappings
+        public final Map<String, Map<String, List<GenericMapping>>> genericMappings = new HashMap<>();
         // zip entry -> patch list
-        public final ListMultimap<String, Utilities.GenericPatch> genericPatches = MultimapBuilder.hashKeys()
-                .arrayListValues().build();
+        public final Map<String, List<Utilities.GenericPatch>> genericPatches = new HashMap<>();
+
+        public MappingsSet() {
+            this(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        /**
+         * @param methodMappings The method mappings by SRG name, can be read-only if no more mappings are added
+         * @param fieldMappings  The field mappings by SRG name, can be read-only if no more mappings are added
+         * @param paramMappings  The param mappings by SRG name, can be read-only if no more mappings are added
+         */
+        public MappingsSet(Map<String, Utilities.Mapping> methodMappings, Map<String, Utilities.Mapping> fieldMappings,
+                Map<String, String> paramMappings) {
+            this.methodMappings = methodMappings;
+            this.fieldMappings = fieldMappings;
+            this.paramMappings = paramMappings;
+            this.nameTable = Suppliers.memoize(() -> SrgNameTable.of(getCombinedMappings()));
+        }
+
+        /**
+         * Shares the method, field and param mappings of a fully loaded set, along with its name table, but starts
+         * without generic mappings so that they can be added without affecting the other users of the shared set.
+         */
+        public MappingsSet(MappingsSet names) {
+            this.methodMappings = names.methodMappings;
+            this.fieldMappings = names.fieldMappings;
+            this.paramMappings = names.paramMappings;
+            this.nameTable = names.nameTable;
+        }
+
+        public void addGenericMapping(String srgName, GenericMapping mapping) {
+            genericMappings.computeIfAbsent(mapping.zipEntry, k -> new HashMap<>())
+                    .computeIfAbsent(srgName, k -> new ArrayList<>(1)).add(mapping);
+        }
+
+        public void addGenericPatch(GenericPatch patch) {
+            genericPatches.computeIfAbsent(patch.zipEntry(), k -> new ArrayList<>(1)).add(patch);
+        }
+
+        /**
+         * @return The generic mappings of a single source file by srg name, looked up once per file so that looking up
+         *         a line is a single hash lookup
+         */
+        public Map<String, List<GenericMapping>> getGenericMappings(String zipEntry) {
+            return genericMappings.getOrDefault(zipEntry, Collections.emptyMap());
+        }
+
+        public List<Utilities.GenericPatch> getGenericPatches(String zipEntry) {
+            return genericPatches.getOrDefault(zipEntry, Collections.emptyList());
+        }
+
+        /**
+         * @return How many times generic mappings were applied in total
+         */
+        public int countGenericMappingUses() {
+            int uses = 0;
+            for (Map<String, List<GenericMapping>> fileMappings : genericMappings.values()) {
+                for (List<GenericMapping> srgMappings : fileMappings.values()) {
+                    for (GenericMapping mapping : srgMappings) {
+                        uses += mapping.uses.get();
+                    }
+                }
+            }
+            return uses;
+        }
 
         public String remapSimpleName(String name) {
             if (StringUtils.isBlank(name)) {
@@ -443,6 +538,15 @@ public final class Utilities {
             }
         }
 
+        /**
+         * @return The MCP name of a method or field SRG name, or null if it isn't mapped
+         */
+        public String getMemberName(String srgName) {
+            final Mapping map = srgName.startsWith("field_") ? fieldMappings.get(srgName)
+                    : methodMappings.get(srgName);
+            return map == null ? null : map.name;
+        }
+
         /**
          * @return A combined map of method, field and param mappings.
          */
@@ -453,23 +557,36 @@ public final class Utilities {
             ret.putAll(paramMappings);
             return ret;
         }
+
+        private final Supplier<SrgNameTable> nameTable;
+
+        /**
+         * @return The combined mappings as an id-keyed table, built on first use so the mappings must be fully loaded
+         */
+        public SrgNameTable getNameTable() {
+            return nameTable.get();
+        }
     }
 
-    public static MappingsSet loadMappingCsvs(File methodsCsv, File fieldsCsv, @Nullable File paramsCsv,
-            @Nullable Collection<File> extraParamsCsvs, @Nullable String genericsFilename) {
+    public static MappingsSet loadMappingCsvs(@Nullable File methodsCsv, @Nullable File fieldsCsv,
+            @Nullable File paramsCsv, @Nullable Collection<File> extraParamsCsvs, @Nullable String genericsFilename) {
         try {
             MappingsSet mappings = new MappingsSet();
-            try (CSVReader methodReader = Utilities.createCsvReader(methodsCsv)) {
-                for (String[] csvLine : methodReader) {
-                    // func_100012_b,setPotionDurationMax,0,Toggle the isPotionDurationMax field.
-                    mappings.methodMappings.put(csvLine[0], new Utilities.Mapping(csvLine[1], csvLine[3]));
+            if (methodsCsv != null) {
+                try (CSVReader methodReader = Utilities.createCsvReader(methodsCsv)) {
+                    for (String[] csvLine : methodReader) {
+                        // func_100012_b,setPotionDurationMax,0,Toggle the isPotionDurationMax field.
+                        mappings.methodMappings.put(csvLine[0], new Utilities.Mapping(csvLine[1], csvLine[3]));
+                    }
                 }
             }
-            try (CSVReader fieldReader = Utilities.createCsvReader(fieldsCsv)) {
-                for (String[] csvLine : fieldReader) {
-                    // field_100013_f,isPotionDurationMax,0,"True if potion effect duration is at maximum, false
-                    // otherwise."
-                    mappings.fieldMappings.put(csvLine[0], new Utilities.Mapping(csvLine[1], csvLine[3]));
+            if (fieldsCsv != null) {
+                try (CSVReader fieldReader = Utilities.createCsvReader(fieldsCsv)) {
+                    for (String[] csvLine : fieldReader) {
+                        // field_100013_f,isPotionDurationMax,0,"True if potion effect duration is at maximum, false
+                        // otherwise."
+                        mappings.fieldMappings.put(csvLine[0], new Utilities.Mapping(csvLine[1], csvLine[3]));
+                    }
                 }
             }
             if (paramsCsv != null) {
@@ -489,44 +606,78 @@ public final class Utilities {
                     }
                 }
             }
-            if (StringUtils.isNotBlank(genericsFilename)) {
-                URL genericsUrl = RemapSourceJarTask.class.getResource(genericsFilename);
-                URL genericPatchesUrl = RemapSourceJarTask.class
-                        .getResource(genericsFilename.replace("Fields", "Patches"));
-                try (CSVReader genReader = Utilities.createCsvReader(genericsUrl)) {
-                    for (String[] genLine : genReader) {
-                        // zipEntry, className, srg, mcp, param, type, suffix, comment
-                        String srg = genLine[2];
-                        int colon = srg.indexOf(':');
-                        if (colon >= 0) {
-                            srg = srg.substring(0, colon);
-                        }
-                        final String zipEntry = genLine[0];
-                        final String param = genLine[4];
-                        final String type = genLine[5];
-                        final String suffix = genLine[6];
-                        final String key = srg.equals("@init") ? (zipEntry + genLine[2]) : srg;
-                        mappings.genericMappings.put(key, new Utilities.GenericMapping(zipEntry, param, suffix, type));
-                    }
-                }
-                try (CSVReader genReader = Utilities.createCsvReader(genericPatchesUrl)) {
-                    for (String[] genLine : genReader) {
-                        // zipEntry, className, containsFilter, toReplace, replaceWith, reason
-                        mappings.genericPatches.put(
-                                genLine[0],
-                                new Utilities.GenericPatch(genLine[0], genLine[2], genLine[3], genLine[4]));
-                    }
-                }
-            }
+            loadGenericMappings(mappings, genericsFilename);
             return mappings;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static void loadSrgMcpMappings(VisitableMappingTree srgMcp, VisitableMappingTree notchSrg, File methodsCsv,
-            File fieldsCsv, @Nullable File paramsCsv, @Nullable Collection<File> extraParamsCsvs) throws IOException {
-        MappingsSet mappings = loadMappingCsvs(methodsCsv, fieldsCsv, paramsCsv, extraParamsCsvs, null);
+    /**
+     * Like {@link #loadMappingCsvs(File, File, File, Collection, String)}, but the method, field and param mappings
+     * are memory-mapped from their precompiled binary form (see {@link BinaryMappings}), compiled into the RFG cache
+     * on the first use of these exact CSVs.
+     *
+     * @param cacheService The cache holding the binary mappings, or null to parse the CSVs
+     */
+    public static MappingsSet loadMappingCsvs(@Nullable RfgCacheService cacheService, @Nullable File methodsCsv,
+            @Nullable File fieldsCsv, @Nullable File paramsCsv, @Nullable Collection<File> extraParamsCsvs,
+            @Nullable String genericsFilename) {
+        if (cacheService == null) {
+            return loadMappingCsvs(methodsCsv, fieldsCsv, paramsCsv, extraParamsCsvs, genericsFilename);
+        }
+        // Later files override earlier ones, so the order is part of the key
+        final List<File> csvs = new ArrayList<>(Arrays.asList(methodsCsv, fieldsCsv, paramsCsv));
+        if (extraParamsCsvs != null) {
+            csvs.addAll(extraParamsCsvs);
+        }
+        final MappingsSet mappings = new MappingsSet(
+                cacheService.loadBinaryMappings(
+                        csvs,
+                        () -> loadMappingCsvs(methodsCsv, fieldsCsv, paramsCsv, extraParamsCsvs, null)));
+        try {
+            loadGenericMappings(mappings, genericsFilename);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return mappings;
+    }
+
+    private static void loadGenericMappings(MappingsSet mappings, @Nullable String genericsFilename)
+            throws IOException {
+        if (StringUtils.isBlank(genericsFilename)) {
+            return;
+        }
+        URL genericsUrl = RemapSourceJarTask.class.getResource(genericsFilename);
+        URL genericPatchesUrl = RemapSourceJarTask.class.getResource(genericsFilename.replace("Fields", "Patches"));
+        try (CSVReader genReader = Utilities.createCsvReader(genericsUrl)) {
+            for (String[] genLine : genReader) {
+                // zipEntry, className, srg, mcp, param, type, suffix, comment
+                String srg = genLine[2];
+                int colon = srg.indexOf(':');
+                if (colon >= 0) {
+                    srg = srg.substring(0, colon);
+                }
+                final String zipEntry = genLine[0];
+                final String param = genLine[4];
+                final String type = genLine[5];
+                final String suffix = genLine[6];
+                final String key = srg.equals("@init") ? genLine[2] : srg;
+                mappings.addGenericMapping(key, new Utilities.GenericMapping(zipEntry, param, suffix, type));
+            }
+        }
+        try (CSVReader genReader = Utilities.createCsvReader(genericPatchesUrl)) {
+            for (String[] genLine : genReader) {
+                // zipEntry, className, containsFilter, toReplace, replaceWith, reason
+                mappings.addGenericPatch(new Utilities.GenericPatch(genLine[0], genLine[2], genLine[3], genLine[4]));
+            }
+        }
+    }
+
+    public static void loadSrgMcpMappings(@Nullable RfgCacheService cacheService, VisitableMappingTree srgMcp,
+            VisitableMappingTree notchSrg, File methodsCsv, File fieldsCsv, @Nullable File paramsCsv,
+            @Nullable Collection<File> extraParamsCsvs) throws IOException {
+        MappingsSet mappings = loadMappingCsvs(cacheService, methodsCsv, fieldsCsv, paramsCsv, extraParamsCsvs, null);
 
         do {
             if (srgMcp.visitHeader()) {
@@ -587,12 +738,35 @@ public final class Utilities {
      * @param classBytes The .class bytes to remap
      * @param mappings   The combined mappings set to use for renaming items
      * @return A jar with names remapped using simple find-and-replace on SRG names in the given mappings (no
-     *         inheritance checks performed)
+     *         inheritance checks performed), the same array if there was nothing to rename
      */
-    public static byte[] simpleRemapClass(byte[] classBytes, Map<String, String> mappings) {
+    public static byte[] simpleRemapClass(byte[] classBytes, SrgNameTable mappings) {
+        return simpleRemapClass(classBytes, mappings, null);
+    }
+
+    /**
+     * @param lookedUpNames If not null, collects the names looked up in the mappings, the remapped class only depends
+     *                      on the original class and what these names are mapped to
+     */
+    public static byte[] simpleRemapClass(byte[] classBytes, SrgNameTable mappings,
+            @Nullable Set<String> lookedUpNames) {
+        // Most classes have no SRG names, and the rest only need a few constants changed
+        final byte[] patched = ConstantPoolRemapper.remap(classBytes, mappings, lookedUpNames);
+        if (patched != null) {
+            return patched;
+        }
         final ClassReader reader = new ClassReader(classBytes);
         final ClassWriter writer = new ClassWriter(0);
-        final ClassRemapper remapper = new ClassRemapper(writer, new SimpleSrgRemapper(mappings));
+        final SimpleSrgRemapper srgRemapper = (lookedUpNames == null) ? new SimpleSrgRemapper(mappings)
+                : new SimpleSrgRemapper(mappings) {
+
+                    @Override
+                    public String map(String key) {
+                        lookedUpNames.add(key);
+                        return super.map(key);
+                    }
+                };
+        final ClassRemapper remapper = new ClassRemapper(writer, srgRemapper);
         reader.accept(remapper, 0);
         return writer.toByteArray();
     }
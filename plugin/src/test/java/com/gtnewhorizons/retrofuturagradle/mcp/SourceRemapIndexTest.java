@@ -0,0 +1,138 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceRemapIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    private static Map<String, List<String>> fileSymbols() {
+        final Map<String, List<String>> fileSymbols = new LinkedHashMap<>();
+        fileSymbols.put("a/A.java", List.of("func_1_a", "field_2_b"));
+        fileSymbols.put("a/B.java", List.of("func_1_a", "p_3_1_"));
+        fileSymbols.put("C.java", List.of("field_4_d"));
+        fileSymbols.put("D.java", List.of());
+        return fileSymbols;
+    }
+
+    /**
+     * @return Hashes what names are mapped to, unmapped names hash to 0
+     */
+    private static ToLongFunction<String> hasher(Map<String, String> mappings) {
+        return name -> {
+            final String mapped = mappings.get(name);
+            return (mapped == null) ? 0 : 31L * mapped.hashCode() + 1;
+        };
+    }
+
+    private static Map<String, String> oldMappings() {
+        final Map<String, String> mappings = new HashMap<>();
+        mappings.put("func_1_a", "doThing");
+        mappings.put("field_2_b", "thing");
+        mappings.put("p_3_1_", "value");
+        // field_4_d is unmapped
+        return mappings;
+    }
+
+    @Test
+    void findsNothingWithTheSameMappings() {
+        final SourceRemapIndex index = SourceRemapIndex.build("digest", fileSymbols(), hasher(oldMappings()));
+
+        assertEquals(Set.of(), index.findAffectedFiles(hasher(oldMappings())));
+        assertTrue(index.coversFiles(fileSymbols().keySet()));
+        assertFalse(index.coversFiles(Set.of("a/A.java", "a/B.java", "C.java")));
+        assertFalse(index.coversFiles(Set.of("a/A.java", "a/B.java", "C.java", "E.java")));
+    }
+
+    @Test
+    void findsExactlyTheAffectedFiles() {
+        final SourceRemapIndex index = SourceRemapIndex.build("digest", fileSymbols(), hasher(oldMappings()));
+
+        final Map<String, String> renamed = oldMappings();
+        renamed.put("field_2_b", "otherThing");
+        assertEquals(Set.of("a/A.java"), index.findAffectedFiles(hasher(renamed)));
+
+        final Map<String, String> shared = oldMappings();
+        shared.put("func_1_a", "doOtherThing");
+        assertEquals(Set.of("a/A.java", "a/B.java"), index.findAffectedFiles(hasher(shared)));
+
+        final Map<String, String> removed = oldMappings();
+        removed.remove("p_3_1_");
+        assertEquals(Set.of("a/B.java"), index.findAffectedFiles(hasher(removed)));
+
+        final Map<String, String> added = oldMappings();
+        added.put("field_4_d", "newlyMapped");
+        assertEquals(Set.of("C.java"), index.findAffectedFiles(hasher(added)));
+
+        // Names no file references don't affect anything
+        final Map<String, String> unused = oldMappings();
+        unused.put("func_5_e", "unused");
+        assertEquals(Set.of(), index.findAffectedFiles(hasher(unused)));
+    }
+
+    @Test
+    void roundTripsUpdatedMappings() throws IOException {
+        final SourceRemapIndex index = SourceRemapIndex.build("digest", fileSymbols(), hasher(oldMappings()));
+        final Map<String, String> newMappings = oldMappings();
+        newMappings.put("field_4_d", "newlyMapped");
+        newMappings.put("func_1_a", "doOtherThing");
+
+        final File indexFile = new File(tempDir, "remap.index");
+        index.withMappings(hasher(newMappings)).write(indexFile);
+        final SourceRemapIndex read = SourceRemapIndex.read(indexFile);
+
+        assertNotNull(read);
+        assertEquals("digest", read.getInputsDigest());
+        assertTrue(read.coversFiles(fileSymbols().keySet()));
+        assertEquals(Set.of(), read.findAffectedFiles(hasher(newMappings)));
+        assertEquals(Set.of("a/A.java", "a/B.java", "C.java"), read.findAffectedFiles(hasher(oldMappings())));
+        // The original index is unchanged
+        assertEquals(Set.of("a/A.java", "a/B.java", "C.java"), index.findAffectedFiles(hasher(newMappings)));
+    }
+
+    @Test
+    void readReturnsNullForUnreadableFiles() throws IOException {
+        final File indexFile = new File(tempDir, "remap.index");
+        assertNull(SourceRemapIndex.read(indexFile));
+
+        SourceRemapIndex.build("digest", fileSymbols(), hasher(oldMappings())).write(indexFile);
+        final byte[] bytes = Files.readAllBytes(indexFile.toPath());
+
+        for (final int length : new int[] { 0, 3, 10, bytes.length / 2, bytes.length - 1 }) {
+            Files.write(indexFile.toPath(), Arrays.copyOf(bytes, length));
+            assertNull(SourceRemapIndex.read(indexFile), "Truncated to " + length + " bytes");
+        }
+
+        final byte[] otherVersion = bytes.clone();
+        otherVersion[3]++;
+        Files.write(indexFile.toPath(), otherVersion);
+        assertNull(SourceRemapIndex.read(indexFile));
+
+        // The last int is the index of the last file referencing the last name
+        final byte[] badFileIndex = bytes.clone();
+        badFileIndex[bytes.length - 4] = 0x7f;
+        Files.write(indexFile.toPath(), badFileIndex);
+        assertNull(SourceRemapIndex.read(indexFile));
+
+        final byte[] badCount = bytes.clone();
+        // The count of files, right after the version and the digest string
+        badCount[4 + 2 + "digest".length()] = (byte) 0x80;
+        Files.write(indexFile.toPath(), badCount);
+        assertNull(SourceRemapIndex.read(indexFile));
+    }
+}
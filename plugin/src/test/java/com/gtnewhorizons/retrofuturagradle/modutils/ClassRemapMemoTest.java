@@ -0,0 +1,146 @@
+package com.gtnewhorizons.retrofuturagradle.modutils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gtnewhorizons.retrofuturagradle.mcp.RfgCacheService;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.SrgNameTable;
+
+class ClassRemapMemoTest {
+
+    private static final List<String> CLASSES = List.of("a/A.class", "a/B.class", "C.class");
+    /** The SRG name each class looks up. */
+    private static final Map<String, String> LOOKUPS = Map
+            .of("a/A.class", "func_1_a", "a/B.class", "field_2_b", "C.class", "field_4_d");
+
+    @TempDir
+    File tempDir;
+
+    private RfgCacheService cacheService() {
+        final Path cachePath = tempDir.toPath().resolve("cache");
+        return new RfgCacheService() {
+
+            @Override
+            public Path getRfgCachePath() {
+                return cachePath;
+            }
+
+            @Override
+            public Parameters getParameters() {
+                return null;
+            }
+        };
+    }
+
+    private File writeInputJar(String contents) throws IOException {
+        final File inputJar = new File(tempDir, "input-" + contents + ".jar");
+        try (final ParallelJarWriter writer = new ParallelJarWriter(new FileOutputStream(inputJar))) {
+            for (final String className : CLASSES) {
+                writer.addEntry(className, 0L, (contents + className).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return inputJar;
+    }
+
+    private static SrgNameTable mappings(String fieldName, String newlyMapped) {
+        final Map<String, String> mappings = new HashMap<>();
+        mappings.put("func_1_a", "doThing");
+        mappings.put("field_2_b", fieldName);
+        if (newlyMapped != null) {
+            mappings.put("field_4_d", newlyMapped);
+        }
+        return SrgNameTable.of(mappings);
+    }
+
+    /**
+     * Deobfuscates the input jar like DependencyDeobfuscationTransform, with each class becoming the given version
+     * string when remapped and looking up one SRG name.
+     *
+     * @return The classes that were remapped instead of copied from the memo
+     */
+    private List<String> remap(RfgCacheService cacheService, File inputJar, SrgNameTable mappings, String version,
+            File outputJar) throws IOException {
+        final List<String> remapped = new ArrayList<>();
+        final ClassRemapMemo memo = ClassRemapMemo.open(cacheService, inputJar, CLASSES, mappings);
+        try (final ParallelJarWriter writer = new ParallelJarWriter(new FileOutputStream(outputJar))) {
+            for (final String className : CLASSES) {
+                if (memo.copyUnaffectedClass(className, writer)) {
+                    assertNull(memo.getSymbolRecorder(className));
+                    continue;
+                }
+                remapped.add(className);
+                if (memo.getSymbolRecorder(className) != null) {
+                    memo.getSymbolRecorder(className).add(LOOKUPS.get(className));
+                }
+                writer.addEntry(className, 0L, version.getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            memo.close();
+        }
+        memo.store(outputJar);
+        return remapped;
+    }
+
+    private static String readEntry(File jar, String name) throws IOException {
+        try (final ZipFile zip = ZipFile.builder().setFile(jar).get();
+                final InputStream is = zip.getInputStream(zip.getEntry(name))) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void remapsOnlyClassesLookingUpChangedNames() throws IOException {
+        final RfgCacheService cacheService = cacheService();
+        final File inputJar = writeInputJar("v1");
+        final File output1 = new File(tempDir, "output1.jar");
+        final File output2 = new File(tempDir, "output2.jar");
+        final File output3 = new File(tempDir, "output3.jar");
+
+        assertEquals(CLASSES, remap(cacheService, inputJar, mappings("thing", null), "first", output1));
+
+        // field_2_b is renamed and field_4_d goes from unmapped to mapped
+        assertEquals(
+                List.of("a/B.class", "C.class"),
+                remap(cacheService, inputJar, mappings("otherThing", "newlyMapped"), "second", output2));
+        assertEquals("first", readEntry(output2, "a/A.class"));
+        assertEquals("second", readEntry(output2, "a/B.class"));
+        assertEquals("second", readEntry(output2, "C.class"));
+
+        // The memo was updated to the second remap
+        assertEquals(
+                List.of(),
+                remap(cacheService, inputJar, mappings("otherThing", "newlyMapped"), "third", output3));
+        assertEquals("first", readEntry(output3, "a/A.class"));
+        assertEquals("second", readEntry(output3, "C.class"));
+
+        // Back to unmapped
+        assertEquals(
+                List.of("C.class"),
+                remap(cacheService, inputJar, mappings("otherThing", null), "fourth", output1));
+    }
+
+    @Test
+    void ignoresTheMemoOfOtherJars() throws IOException {
+        final RfgCacheService cacheService = cacheService();
+        final File output = new File(tempDir, "output.jar");
+
+        remap(cacheService, writeInputJar("v1"), mappings("thing", null), "first", output);
+        assertEquals(CLASSES, remap(cacheService, writeInputJar("v2"), mappings("thing", null), "second", output));
+    }
+}
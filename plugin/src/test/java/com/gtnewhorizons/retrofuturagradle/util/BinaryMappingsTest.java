@@ -0,0 +1,116 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BinaryMappingsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Utilities.MappingsSet sampleMappings() {
+        final Utilities.MappingsSet mappings = new Utilities.MappingsSet();
+        mappings.methodMappings.put("func_71410_x", new Utilities.Mapping("getMinecraft", "Return the singleton"));
+        mappings.methodMappings.put("func_1_a", new Utilities.Mapping("größe", "Gibt die Größe zurück ✓"));
+        mappings.methodMappings.put("func_2_b", new Utilities.Mapping("noDoc", null));
+        // "Aa" and "BB" have the same String.hashCode, so these all collide and have to be probed past
+        mappings.methodMappings.put("AaAa", new Utilities.Mapping("first", ""));
+        mappings.methodMappings.put("BBBB", new Utilities.Mapping("second", ""));
+        mappings.methodMappings.put("AaBB", new Utilities.Mapping("third", ""));
+        mappings.fieldMappings.put("field_1_p", new Utilities.Mapping("player", "The player"));
+        mappings.fieldMappings.put("field_é_q", new Utilities.Mapping("accent", ""));
+        mappings.paramMappings.put("p_71410_1_", "mc");
+        mappings.paramMappings.put("p_i1_2_", "größe");
+        return mappings;
+    }
+
+    private Utilities.MappingsSet writeAndOpen(Utilities.MappingsSet mappings) throws IOException {
+        final File file = tempDir.resolve("mappings.bin").toFile();
+        BinaryMappings.write(mappings, file);
+        return BinaryMappings.open(file);
+    }
+
+    @Test
+    void roundTrips() throws IOException {
+        final Utilities.MappingsSet expected = sampleMappings();
+        final Utilities.MappingsSet actual = writeAndOpen(expected);
+
+        assertEquals(expected.methodMappings, actual.methodMappings);
+        assertEquals(expected.fieldMappings, actual.fieldMappings);
+        assertEquals(expected.paramMappings, actual.paramMappings);
+        // Compared from the other side, through entrySet iteration
+        assertEquals(actual.methodMappings, new HashMap<>(expected.methodMappings));
+        assertEquals(new HashMap<>(actual.paramMappings), expected.paramMappings);
+        assertEquals(expected.methodMappings.size(), actual.methodMappings.entrySet().size());
+    }
+
+    @Test
+    void findsHitsAndMisses() throws IOException {
+        final Utilities.MappingsSet actual = writeAndOpen(sampleMappings());
+
+        assertEquals(
+                new Utilities.Mapping("getMinecraft", "Return the singleton"),
+                actual.methodMappings.get("func_71410_x"));
+        assertEquals("Gibt die Größe zurück ✓", actual.methodMappings.get("func_1_a").javadoc());
+        assertEquals("", actual.methodMappings.get("func_2_b").javadoc());
+        assertEquals("first", actual.methodMappings.get("AaAa").name());
+        assertEquals("second", actual.methodMappings.get("BBBB").name());
+        assertEquals("third", actual.methodMappings.get("AaBB").name());
+        assertEquals("accent", actual.fieldMappings.get("field_é_q").name());
+        assertEquals("größe", actual.paramMappings.get("p_i1_2_"));
+        assertTrue(actual.paramMappings.containsKey("p_71410_1_"));
+
+        // Same hash as existing keys
+        assertNull(actual.methodMappings.get("BBAa"));
+        assertFalse(actual.methodMappings.containsKey("BBAa"));
+        // Same length as an existing key, differing in the last character or by a non-ASCII one
+        assertNull(actual.methodMappings.get("func_71410_y"));
+        assertNull(actual.fieldMappings.get("field_1_é"));
+        assertNull(actual.fieldMappings.get("field_e_q"));
+        // Prefixes and other kinds
+        assertNull(actual.methodMappings.get("func_71410_"));
+        assertNull(actual.methodMappings.get("field_1_p"));
+        assertFalse(actual.paramMappings.containsKey("p_71410_1"));
+        assertFalse(actual.paramMappings.containsKey(1));
+        assertNull(actual.paramMappings.get(null));
+    }
+
+    @Test
+    void handlesEmptyTables() throws IOException {
+        final Utilities.MappingsSet actual = writeAndOpen(new Utilities.MappingsSet());
+
+        assertTrue(actual.methodMappings.isEmpty());
+        assertFalse(actual.fieldMappings.entrySet().iterator().hasNext());
+        assertNull(actual.paramMappings.get("p_1_1_"));
+    }
+
+    @Test
+    void handlesManyEntries() throws IOException {
+        final Utilities.MappingsSet expected = new Utilities.MappingsSet();
+        for (int i = 0; i < 5000; i++) {
+            expected.fieldMappings.put("field_" + i + "_a", new Utilities.Mapping("field" + i, "doc " + (i % 7)));
+        }
+        final Utilities.MappingsSet actual = writeAndOpen(expected);
+
+        assertEquals(expected.fieldMappings, actual.fieldMappings);
+        for (int i = 0; i < 5000; i++) {
+            assertNull(actual.fieldMappings.get("field_" + i + "_b"));
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        final Path file = tempDir.resolve("other.bin");
+        Files.writeString(file, "func_1_a,name,0,", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> BinaryMappings.open(file.toFile()));
+    }
+}
@@ -0,0 +1,214 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+
+/**
+ * Checks that {@link ConstantPoolRemapper} remaps real classes the same way as the ASM {@link ClassRemapper} it skips.
+ */
+class ConstantPoolRemapperTest {
+
+    private static final String SOURCES = """
+            import java.lang.annotation.*;
+            import java.util.List;
+            import java.util.function.IntUnaryOperator;
+
+            @Retention(RetentionPolicy.RUNTIME)
+            @interface Marker {
+                int func_10_a() default 1;
+                String field_11_b() default "func_10_a";
+                Nested[] field_14_e() default {};
+            }
+
+            @Retention(RetentionPolicy.RUNTIME)
+            @interface Nested {
+                int func_15_f();
+            }
+
+            @Retention(RetentionPolicy.RUNTIME)
+            @Target({ ElementType.TYPE_USE, ElementType.TYPE_PARAMETER })
+            @interface Typed {
+                int func_12_c();
+            }
+
+            record Point(int field_13_d, int y) {
+                Point {
+                    if (field_13_d < 0) throw new IllegalArgumentException("field_13_d");
+                }
+            }
+
+            class Owner {
+                int field_1_a;
+                static int func_2_b(int p_2_1_) { return p_2_1_ + 1; }
+            }
+
+            class Other {
+                int field_1_a;
+                int field_5_e;
+            }
+
+            class Sample<@Typed(func_12_c = 0) T> {
+                @Marker(func_10_a = 3, field_11_b = "field_1_a", field_14_e = { @Nested(func_15_f = 4) })
+                int field_3_c;
+                String text = "field_1_a";
+                List<@Typed(func_12_c = 1) String> field_6_f;
+
+                int func_4_d(Owner o, Other t, @Typed(func_12_c = 2) String p_4_3_) {
+                    IntUnaryOperator f = Owner::func_2_b;
+                    Runnable r = () -> o.field_1_a++;
+                    r.run();
+                    @Typed(func_12_c = 3) int field_7_g = t.field_5_e;
+                    return o.field_1_a + t.field_1_a + f.applyAsInt(field_7_g) + new Point(1, 2).field_13_d();
+                }
+            }
+
+            class field_20_z {
+                int field_1_a;
+            }
+
+            class UsesRenamedClass {
+                field_20_z func_21_a() { return new field_20_z(); }
+            }
+            """;
+
+    private static SrgNameTable mappings() {
+        final Map<String, String> mappings = new HashMap<>();
+        mappings.put("field_1_a", "count");
+        mappings.put("func_2_b", "increment");
+        mappings.put("p_2_1_", "value");
+        mappings.put("field_3_c", "annotated");
+        mappings.put("func_4_d", "sum");
+        mappings.put("func_10_a", "value");
+        mappings.put("field_11_b", "name");
+        mappings.put("func_12_c", "level");
+        mappings.put("field_13_d", "x");
+        mappings.put("field_14_e", "children");
+        mappings.put("func_15_f", "depth");
+        mappings.put("field_6_f", "names");
+        mappings.put("field_7_g", "local");
+        mappings.put("field_20_z", "RenamedClass");
+        mappings.put("func_21_a", "create");
+        // field_5_e and p_4_3_ stay unmapped
+        return SrgNameTable.of(mappings);
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private Map<String, byte[]> compile() throws IOException {
+        final Path sourceDir = Files.createDirectories(tempDir.resolve("src"));
+        final Path classDir = Files.createDirectories(tempDir.resolve("classes"));
+        final Path source = sourceDir.resolve("Sample.java");
+        Files.writeString(source, SOURCES, StandardCharsets.UTF_8);
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            final Boolean success = compiler.getTask(
+                    null,
+                    fileManager,
+                    null,
+                    List.of("-g", "-parameters", "-d", classDir.toString()),
+                    null,
+                    fileManager.getJavaFileObjects(source.toFile())).call();
+            assertTrue(success);
+        }
+        final Map<String, byte[]> classes = new HashMap<>();
+        for (final File classFile : classDir.toFile().listFiles()) {
+            classes.put(classFile.getName(), Files.readAllBytes(classFile.toPath()));
+        }
+        return classes;
+    }
+
+    private static byte[] remapWithAsm(byte[] classBytes, SrgNameTable mappings) {
+        final ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classBytes).accept(new ClassRemapper(writer, new SimpleSrgRemapper(mappings)), 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Rewrites a class with a fresh constant pool, so that classes with the same contents compare equal whatever
+     * order their constants were in.
+     */
+    private static byte[] normalize(byte[] classBytes) {
+        final ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classBytes).accept(writer, 0);
+        return writer.toByteArray();
+    }
+
+    @Test
+    void remapsLikeAsm() throws IOException {
+        final SrgNameTable mappings = mappings();
+        final List<String> remapped = new ArrayList<>();
+        for (final Map.Entry<String, byte[]> classFile : compile().entrySet()) {
+            final String name = classFile.getKey();
+            if (name.equals("field_20_z.class") || name.equals("UsesRenamedClass.class")) {
+                continue;
+            }
+            final byte[] original = classFile.getValue();
+            final byte[] patched = ConstantPoolRemapper.remap(original, mappings);
+            assertNotNull(patched, name);
+            final byte[] expected = remapWithAsm(original, mappings);
+            assertArrayEquals(normalize(expected), normalize(patched), name);
+            if (patched != original) {
+                remapped.add(name);
+            }
+        }
+        for (final String name : new String[] { "Marker.class", "Nested.class", "Typed.class", "Point.class",
+                "Owner.class", "Other.class", "Sample.class" }) {
+            assertTrue(remapped.contains(name), name);
+        }
+    }
+
+    @Test
+    void keepsStringsAndDebugNames() throws IOException {
+        final byte[] patched = ConstantPoolRemapper.remap(compile().get("Sample.class"), mappings());
+        final String constants = new String(patched, StandardCharsets.ISO_8859_1);
+        // Still used by the string constant and the local variable table, next to the new names
+        assertTrue(constants.contains("field_1_a"));
+        assertTrue(constants.contains("field_7_g"));
+        assertTrue(constants.contains("count"));
+    }
+
+    @Test
+    void leavesClassesWithoutMappedNamesUntouched() {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(52, 0, "Plain", null, "java/lang/Object", null);
+        writer.visitField(0, "field_5_e", "I", null, null).visitEnd();
+        writer.visitEnd();
+        final byte[] plain = writer.toByteArray();
+        assertSame(plain, ConstantPoolRemapper.remap(plain, mappings()));
+    }
+
+    @Test
+    void fallsBackToAsmForMappedClassNames() throws IOException {
+        final SrgNameTable mappings = mappings();
+        final Map<String, byte[]> classes = compile();
+        for (final String name : new String[] { "field_20_z.class", "UsesRenamedClass.class" }) {
+            final byte[] original = classes.get(name);
+            assertNull(ConstantPoolRemapper.remap(original, mappings), name);
+            final byte[] expected = remapWithAsm(original, mappings);
+            assertArrayEquals(
+                    normalize(expected),
+                    normalize(Utilities.simpleRemapClass(original, mappings)),
+                    name);
+        }
+    }
+}
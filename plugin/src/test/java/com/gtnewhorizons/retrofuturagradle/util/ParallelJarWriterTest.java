@@ -0,0 +1,173 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelJarWriterTest {
+
+    @TempDir
+    File tempDir;
+
+    private static byte[] text(String name, int repeat) {
+        return (name + "\n").repeat(repeat).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A jar with a stored and a deflated entry to copy raw
+     */
+    private File writeSourceJar() throws IOException {
+        final File source = new File(tempDir, "source.jar");
+        try (final ZipArchiveOutputStream zos = new ZipArchiveOutputStream(source)) {
+            for (final int method : new int[] { ZipEntry.STORED, ZipEntry.DEFLATED }) {
+                final String name = (method == ZipEntry.STORED) ? "raw/stored.bin" : "raw/deflated.txt";
+                final byte[] data = text(name, 100);
+                final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+                entry.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setCrc(crc.getValue());
+                    entry.setSize(data.length);
+                }
+                zos.putArchiveEntry(entry);
+                zos.write(data);
+                zos.closeArchiveEntry();
+            }
+        }
+        return source;
+    }
+
+    private static Map<String, ZipArchiveEntry> readEntries(ZipFile zip) {
+        final Map<String, ZipArchiveEntry> entries = new LinkedHashMap<>();
+        for (final ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+            entries.put(entry.getName(), entry);
+        }
+        return entries;
+    }
+
+    private static byte[] read(ZipFile zip, ZipArchiveEntry entry) throws IOException {
+        try (final InputStream is = zip.getInputStream(entry)) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    @Test
+    void keepsSubmissionOrder() throws IOException {
+        final File sourceJar = writeSourceJar();
+        final File output = new File(tempDir, "output.jar");
+        final List<String> expectedOrder = new ArrayList<>();
+        final Map<String, byte[]> expectedData = new LinkedHashMap<>();
+        try (final ZipFile source = ZipFile.builder().setFile(sourceJar).get();
+                final ParallelJarWriter writer = new ParallelJarWriter(new FileOutputStream(output))) {
+            writer.addDirectory("a/");
+            expectedOrder.add("a/");
+            for (int i = 0; i < 50; i++) {
+                final String name = "a/file" + i + ".txt";
+                // Large entries first, so that later entries tend to finish compressing before earlier ones
+                final byte[] data = text(name, 2000 - 40 * i);
+                expectedOrder.add(name);
+                expectedData.put(name, data);
+                if (i % 3 == 0) {
+                    final int delay = 50 - i;
+                    writer.addComputedEntry(name, 0L, () -> {
+                        Thread.sleep(delay);
+                        return data;
+                    });
+                } else {
+                    writer.addEntry(name, data);
+                }
+                if (i == 10) {
+                    for (final ZipArchiveEntry entry : Collections.list(source.getEntriesInPhysicalOrder())) {
+                        writer.addRawEntry(source, entry);
+                        expectedOrder.add(entry.getName());
+                        expectedData.put(entry.getName(), read(source, entry));
+                    }
+                    writer.addDirectory("b/");
+                    expectedOrder.add("b/");
+                }
+            }
+        }
+
+        try (final ZipFile zip = ZipFile.builder().setFile(output).get()) {
+            final Map<String, ZipArchiveEntry> entries = readEntries(zip);
+            assertEquals(expectedOrder, new ArrayList<>(entries.keySet()));
+            for (final Map.Entry<String, byte[]> expected : expectedData.entrySet()) {
+                assertArrayEquals(expected.getValue(), read(zip, entries.get(expected.getKey())), expected.getKey());
+            }
+            assertEquals(ZipEntry.STORED, entries.get("a/").getMethod());
+            assertTrue(entries.get("a/").isDirectory());
+            assertEquals(ZipEntry.DEFLATED, entries.get("a/file1.txt").getMethod());
+            assertEquals(ZipEntry.DEFLATED, entries.get("a/file0.txt").getMethod());
+            // Raw copies keep their original compression
+            assertEquals(ZipEntry.STORED, entries.get("raw/stored.bin").getMethod());
+            assertEquals(ZipEntry.DEFLATED, entries.get("raw/deflated.txt").getMethod());
+        }
+    }
+
+    @Test
+    void storesEntriesWithoutCompression() throws IOException {
+        final File output = new File(tempDir, "stored.jar");
+        try (final ParallelJarWriter writer = new ParallelJarWriter(new FileOutputStream(output), false)) {
+            writer.addEntry("x.txt", text("x", 100));
+            writer.addComputedEntry("y.txt", -1, () -> text("y", 100));
+        }
+        try (final ZipFile zip = ZipFile.builder().setFile(output).get()) {
+            final Map<String, ZipArchiveEntry> entries = readEntries(zip);
+            assertEquals(List.of("x.txt", "y.txt"), new ArrayList<>(entries.keySet()));
+            for (final ZipArchiveEntry entry : entries.values()) {
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+            }
+            assertArrayEquals(text("y", 100), read(zip, entries.get("y.txt")));
+        }
+    }
+
+    @Test
+    void reportsFailedEntriesOnClose() throws IOException {
+        final File output = new File(tempDir, "failed.jar");
+        final CountDownLatch closing = new CountDownLatch(1);
+        final ParallelJarWriter writer = new ParallelJarWriter(new FileOutputStream(output));
+        writer.addEntry("before.txt", text("before", 10));
+        writer.addComputedEntry("broken.class", -1, () -> {
+            // Only fail once close() is waiting for it
+            closing.await();
+            throw new IOException("Could not transform broken.class");
+        });
+        writer.addEntry("after.txt", text("after", 10));
+        closing.countDown();
+        final IOException e = assertThrows(IOException.class, writer::close);
+        assertEquals("Could not transform broken.class", e.getCause().getMessage());
+    }
+
+    @Test
+    void rethrowsRuntimeExceptionsOnClose() throws IOException {
+        final File output = new File(tempDir, "failed-runtime.jar");
+        final CountDownLatch closing = new CountDownLatch(1);
+        final ParallelJarWriter writer = new ParallelJarWriter(new FileOutputStream(output));
+        writer.addComputedEntry("broken.class", -1, () -> {
+            closing.await();
+            throw new IllegalStateException("Bad class");
+        });
+        closing.countDown();
+        assertThrows(IllegalStateException.class, writer::close);
+    }
+}
@@ -0,0 +1,69 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class SrgNameTableTest {
+
+    @Test
+    void leadingZerosAreDistinctNames() {
+        final Map<String, String> mappings = new HashMap<>();
+        mappings.put("func_12_a", "method");
+        mappings.put("func_012_a", "methodZero");
+        mappings.put("field_0_b", "field");
+        mappings.put("field_00_b", "fieldZeros");
+        mappings.put("p_12_1_", "param");
+        mappings.put("p_012_1_", "paramZero");
+        mappings.put("p_12_01_", "paramIndexZero");
+        mappings.put("p_i12_1_", "ctorParam");
+        mappings.put("p_i012_1_", "ctorParamZero");
+        final SrgNameTable table = SrgNameTable.of(mappings);
+
+        assertEquals(mappings.size(), table.size());
+        for (final Map.Entry<String, String> mapping : mappings.entrySet()) {
+            assertEquals(mapping.getValue(), table.get(mapping.getKey()), mapping.getKey());
+        }
+        assertNull(table.get("func_0012_a"));
+        assertNull(table.get("p_12_001_"));
+        assertNull(table.get("p_i0012_1_"));
+    }
+
+    @Test
+    void namesPastThePackedLimitsUseTheFallback() {
+        final Map<String, String> mappings = new HashMap<>();
+        // 10 digit id, 5 character suffix and 4 digit parameter index
+        mappings.put("func_1234567890_a", "longId");
+        mappings.put("field_1_abcde", "longSuffix");
+        mappings.put("p_1_1234_", "longIndex");
+        mappings.put("p_i1234567890_1_", "longCtorId");
+        mappings.put("func_1_abcd", "packed");
+        final SrgNameTable table = SrgNameTable.of(mappings);
+
+        assertEquals(mappings.size(), table.size());
+        for (final Map.Entry<String, String> mapping : mappings.entrySet()) {
+            assertEquals(mapping.getValue(), table.get(mapping.getKey()), mapping.getKey());
+        }
+        assertNull(table.get("func_1234567891_a"));
+        assertNull(table.get("field_1_abcdf"));
+        assertNull(table.get("func_1_abce"));
+    }
+
+    @Test
+    void getLooksUpRangesOfText() {
+        final Map<String, String> mappings = new HashMap<>();
+        mappings.put("func_71410_x", "getMinecraft");
+        mappings.put("field_1234567890_a", "fallback");
+        final SrgNameTable table = SrgNameTable.of(mappings);
+
+        final String line = "this.func_71410_x().field_1234567890_a";
+        assertEquals("getMinecraft", table.get(line, 5, 17));
+        assertEquals("fallback", table.get(line, 20, line.length()));
+        assertNull(table.get(line, 5, 16));
+        assertNull(table.get("net/minecraft/client/Minecraft"));
+        assertNull(table.get("p_"));
+    }
+}
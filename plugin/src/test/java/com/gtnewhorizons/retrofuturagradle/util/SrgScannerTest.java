@@ -0,0 +1,84 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link SrgScanner} finds the same names as the regex it replaced in RemapSourceJarTask.
+ */
+class SrgScannerTest {
+
+    private static final Pattern SRG_FINDER = Pattern
+            .compile("(func_\\d+_[a-zA-Z_]+|field_\\d+_[a-zA-Z_]+|p_\\w+_\\d+_)([^\\w$]|$)");
+
+    private static final String[] LINES = { "", "return this.func_71410_x().field_1_p + p_i123_1_;",
+            "    public void func_1_a(int p_1_1_, int p_i1234_12_) {", "int xfunc_1_a = afield_22_b + pp_3_4_;",
+            "funcfunc_1_a(field_field_2_b)", "func_1_ap_2_3_", "p_a_b_1_2_ p_i123_1_ p_123_1_",
+            "func_1_a$b field_2_c$ p_1_2_$", "func_1_aé field_3_dü p_1_2_ä éfunc_4_e",
+            "x = field_5_e", "foo(p_6_7_", "func_1_a2 field_1_ func__a func_a_b p__1_ p_1__ p_1_2_3 p_1_x_",
+            "String s = \"func_100_a\" + 'field_2_B';", "field_12_abc_def.func_3_A_b_C",
+            "\tp_i1_0_=func_0_a;field_00_b", "functional fielding p_ps_" };
+
+    /** The remapping loop of RemapSourceJarTask before it moved to {@link SrgScanner}. */
+    private static String remapWithRegex(String line, List<String> found) {
+        final Matcher mSrg = SRG_FINDER.matcher(line);
+        final StringBuilder mappedLine = new StringBuilder();
+        while (mSrg.find()) {
+            found.add(mSrg.group(1));
+            mSrg.appendReplacement(mappedLine, Matcher.quoteReplacement(mapName(mSrg.group(1))));
+            mappedLine.append(mSrg.group(2));
+        }
+        mSrg.appendTail(mappedLine);
+        return mappedLine.toString();
+    }
+
+    private static String mapName(String name) {
+        return "<" + name.toUpperCase(Locale.ROOT) + ">";
+    }
+
+    @Test
+    void remapLineMatchesRegex() {
+        final StringBuilder buffer = new StringBuilder();
+        for (final String line : LINES) {
+            final List<String> expectedNames = new ArrayList<>();
+            final String expected = remapWithRegex(line, expectedNames);
+
+            final List<String> actualNames = new ArrayList<>();
+            final String actual = SrgScanner.remapLine(line, buffer, (l, start, end) -> {
+                final String name = l.substring(start, end);
+                actualNames.add(name);
+                return mapName(name);
+            });
+
+            assertEquals(expectedNames, actualNames, line);
+            assertEquals(expected, actual, line);
+        }
+    }
+
+    @Test
+    void findMatchesRegex() {
+        for (final String line : LINES) {
+            final Matcher mSrg = SRG_FINDER.matcher(line);
+            final int start = SrgScanner.find(line, 0);
+            if (mSrg.find()) {
+                assertEquals(mSrg.start(1), start, line);
+                assertEquals(mSrg.end(1), SrgScanner.nameEnd(line, start), line);
+            } else {
+                assertEquals(-1, start, line);
+            }
+        }
+    }
+
+    @Test
+    void remapLineKeepsUnmappedLines() {
+        final String line = "return this.func_71410_x();";
+        assertSame(line, SrgScanner.remapLine(line, new StringBuilder(), (l, start, end) -> null));
+    }
+}